@@ -17,7 +17,7 @@ import com.example.bread.model.Comment;
 import com.example.bread.model.MoodEvent;
 import com.example.bread.repository.ParticipantRepository;
 import com.example.bread.utils.EmotionUtils;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 import com.example.bread.utils.TimestampUtils;
 
 import java.util.List;
@@ -100,15 +100,13 @@ public class EventDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
             emotionalStateText.setText(event.getEmotionalState().toString() + " " + EmotionUtils.getEmoticon(event.getEmotionalState()));
             socialSituationText.setText(event.getSocialSituation().toString());
             reasonText.setText(event.getReason());
-            if (event.getAttachedImage() != null) {
-                eventImage.setImageBitmap(ImageHandler.base64ToBitmap(event.getAttachedImage()));
+            if (event.hasAttachedImage()) {
+                ImageLoader.getInstance(itemView.getContext()).loadMoodEventImage(event, eventImage, 0);
             }
             int colorResId = EmotionUtils.getColorResource(event.getEmotionalState());
             cardLayout.setBackgroundResource(colorResId);
             participantRepository.fetchParticipantByRef(event.getParticipantRef(), participant -> {
-                if (participant.getProfilePicture() != null) {
-                    profileImage.setImageBitmap(ImageHandler.base64ToBitmap(participant.getProfilePicture()));
-                }
+                ImageLoader.getInstance(itemView.getContext()).loadProfilePicture(participant, profileImage, R.drawable.ic_baseline_profile_24);
             }, e -> {
                 // Handle errors if needed
                 Log.e(TAG, "Error fetching participant", e);
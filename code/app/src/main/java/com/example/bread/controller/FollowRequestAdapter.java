@@ -14,7 +14,7 @@ import com.example.bread.R;
 import com.example.bread.model.FollowRequest;
 import com.example.bread.model.Participant;
 import com.example.bread.repository.ParticipantRepository;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 
 import java.util.List;
 
@@ -43,6 +43,12 @@ public class FollowRequestAdapter extends RecyclerView.Adapter<FollowRequestAdap
         holder.bind(request, position);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull RequestViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.profileImage);
+    }
+
     @Override
     public int getItemCount() {
         return requestsList.size();
@@ -57,6 +63,7 @@ public class FollowRequestAdapter extends RecyclerView.Adapter<FollowRequestAdap
         ImageView profileImage;
         TextView usernameText, nameText;
         Button acceptButton, declineButton;
+        String boundUsername;
 
         public RequestViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -70,19 +77,18 @@ public class FollowRequestAdapter extends RecyclerView.Adapter<FollowRequestAdap
         void bind(FollowRequest request, int position) {
             String requestorUsername = request.getFromUsername();
             usernameText.setText(requestorUsername);
+            boundUsername = requestorUsername;
+            ImageLoader.getInstance(itemView.getContext()).load(null, profileImage, R.drawable.default_avatar);
 
             // Load user details
             participantRepository.fetchBaseParticipant(requestorUsername, participant -> {
-                if (participant != null) {
+                // Skip if the row was recycled for another request while fetching
+                if (participant != null && requestorUsername.equals(boundUsername)) {
                     // Set full name
                     nameText.setText(participant.getDisplayName());
 
                     // Set profile image if available
-                    if (participant.getProfilePicture() != null) {
-                        profileImage.setImageBitmap(ImageHandler.base64ToBitmap(participant.getProfilePicture()));
-                    } else {
-                        profileImage.setImageResource(R.drawable.default_avatar);
-                    }
+                    ImageLoader.getInstance(itemView.getContext()).loadProfilePicture(participant, profileImage, R.drawable.default_avatar);
                 }
             }, null);
 
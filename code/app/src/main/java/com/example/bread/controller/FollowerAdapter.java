@@ -11,7 +11,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bread.R;
 import com.example.bread.model.Participant;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 
 import java.util.List;
 
@@ -40,6 +40,12 @@ public class FollowerAdapter extends RecyclerView.Adapter<FollowerAdapter.Follow
         holder.bind(participant);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull FollowerViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.profileImage);
+    }
+
     @Override
     public int getItemCount() {
         return userList.size();
@@ -85,11 +91,7 @@ public class FollowerAdapter extends RecyclerView.Adapter<FollowerAdapter.Follow
             nameText.setText(participant.getFirstName() + " " + participant.getLastName());
 
             // Set profile image if available
-            if (participant.getProfilePicture() != null) {
-                profileImage.setImageBitmap(ImageHandler.base64ToBitmap(participant.getProfilePicture()));
-            } else {
-                profileImage.setImageResource(R.drawable.default_avatar);
-            }
+            ImageLoader.getInstance(itemView.getContext()).loadProfilePicture(participant, profileImage, R.drawable.default_avatar);
         }
     }
 }
\ No newline at end of file
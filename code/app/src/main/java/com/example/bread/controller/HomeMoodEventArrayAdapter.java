@@ -2,8 +2,6 @@ package com.example.bread.controller;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -20,7 +18,7 @@ import com.example.bread.model.MoodEvent;
 import com.example.bread.model.Participant;
 import com.example.bread.repository.ParticipantRepository;
 import com.example.bread.utils.EmotionUtils;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 import com.example.bread.utils.TimestampUtils;
 
 import java.util.ArrayList;
@@ -30,8 +28,6 @@ import java.util.ArrayList;
  */
 public class HomeMoodEventArrayAdapter extends MoodEventArrayAdapter {
 
-    // Static cache for participants shared across adapter instances
-    private static final LruCache<String, Participant> participantCache = new LruCache<>(50);
     private final ParticipantRepository userRepo;
 
     public HomeMoodEventArrayAdapter(@NonNull Context context, ArrayList<MoodEvent> events) {
@@ -49,6 +45,8 @@ public class HomeMoodEventArrayAdapter extends MoodEventArrayAdapter {
         ImageView moodImage;
         CardView miniImageHolder;
         ConstraintLayout eventLayout;
+        // Path of the participant the row is bound to, to drop participant fetches of recycled rows
+        String participantPath;
     }
 
     @SuppressLint("SetTextI18n")
@@ -81,17 +79,12 @@ public class HomeMoodEventArrayAdapter extends MoodEventArrayAdapter {
             loadParticipantInfo(moodEvent, holder);
 
             // Handle mood event images - fix to properly hide the holder when no image
-            if (moodEvent.getAttachedImage() != null && !moodEvent.getAttachedImage().isEmpty()) {
-                Bitmap imageBitmap = ImageHandler.base64ToBitmap(moodEvent.getAttachedImage());
-                if (imageBitmap != null) {
-                    holder.moodImage.setImageBitmap(imageBitmap);
-                    holder.moodImage.setVisibility(View.VISIBLE);
-                    holder.miniImageHolder.setVisibility(View.VISIBLE);
-                } else {
-                    holder.moodImage.setVisibility(View.GONE);
-                    holder.miniImageHolder.setVisibility(View.GONE);
-                }
+            if (moodEvent.hasAttachedImage()) {
+                ImageLoader.getInstance(context).loadMoodEventListImage(moodEvent, holder.moodImage, 0);
+                holder.moodImage.setVisibility(View.VISIBLE);
+                holder.miniImageHolder.setVisibility(View.VISIBLE);
             } else {
+                ImageLoader.getInstance(context).cancel(holder.moodImage);
                 holder.moodImage.setVisibility(View.GONE);
                 holder.miniImageHolder.setVisibility(View.GONE);
             }
@@ -117,60 +110,49 @@ public class HomeMoodEventArrayAdapter extends MoodEventArrayAdapter {
     }
 
     /**
-     * Loads participant information from cache or network
-     * This method improves performance by caching participant data and avoiding
-     * unnecessary network calls when the same participant data is needed multiple times
+     * Loads participant information from the shared participant cache or network
+     * This method improves performance by reusing participant data across screens and
+     * sharing one network call when the same participant is needed by several rows
      *
      * @param moodEvent The mood event containing the participant reference
      * @param holder    The ViewHolder to update with participant data
      */
     private void loadParticipantInfo(MoodEvent moodEvent, ViewHolder holder) {
         if (moodEvent.getParticipantRef() == null) {
+            holder.participantPath = null;
             holder.username.setText("Unknown");
-            holder.profilePic.setImageResource(R.drawable.ic_baseline_profile_24);
+            ImageLoader.getInstance(context).load(null, holder.profilePic, R.drawable.ic_baseline_profile_24);
             return;
         }
 
         String refPath = moodEvent.getParticipantRef().getPath();
+        holder.participantPath = refPath;
 
-        Participant cachedParticipant = participantCache.get(refPath);
+        Participant cachedParticipant = userRepo.getCachedParticipant(moodEvent.getParticipantRef().getId());
         if (cachedParticipant != null) {
             holder.username.setText(cachedParticipant.getUsername());
-
-            String base64Image = cachedParticipant.getProfilePicture();
-            if (base64Image != null && !base64Image.isEmpty()) {
-                Bitmap bitmap = ImageHandler.base64ToBitmap(base64Image);
-                if (bitmap != null) {
-                    holder.profilePic.setImageBitmap(bitmap);
-                } else {
-                    holder.profilePic.setImageResource(R.drawable.ic_baseline_profile_24);
-                }
-            } else {
-                holder.profilePic.setImageResource(R.drawable.ic_baseline_profile_24);
-            }
+            ImageLoader.getInstance(context).loadProfilePicture(cachedParticipant, holder.profilePic, R.drawable.ic_baseline_profile_24);
             return;
         }
 
         holder.username.setText("Loading...");
-        holder.profilePic.setImageResource(R.drawable.ic_baseline_profile_24);
+        ImageLoader.getInstance(context).load(null, holder.profilePic, R.drawable.ic_baseline_profile_24);
 
         userRepo.fetchParticipantByRef(moodEvent.getParticipantRef(), participant -> {
+            if (!refPath.equals(holder.participantPath)) {
+                // The row was recycled for another participant while fetching
+                return;
+            }
             if (participant != null) {
-                participantCache.put(refPath, participant);
-
                 holder.username.setText(participant.getUsername());
-                String base64Image = participant.getProfilePicture();
-                if (base64Image != null && !base64Image.isEmpty()) {
-                    Bitmap bitmap = ImageHandler.base64ToBitmap(base64Image);
-                    if (bitmap != null) {
-                        holder.profilePic.setImageBitmap(bitmap);
-                    }
-                }
+                ImageLoader.getInstance(context).loadProfilePicture(participant, holder.profilePic, R.drawable.ic_baseline_profile_24);
             } else {
                 holder.username.setText("Unknown");
             }
         }, e -> {
-            holder.username.setText("Unknown");
+            if (refPath.equals(holder.participantPath)) {
+                holder.username.setText("Unknown");
+            }
         });
     }
 }
\ No newline at end of file
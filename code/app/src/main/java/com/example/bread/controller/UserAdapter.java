@@ -12,8 +12,9 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bread.R;
 import com.example.bread.model.Participant;
+import com.example.bread.repository.FollowGraph;
 import com.example.bread.repository.ParticipantRepository;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 import com.google.firebase.auth.FirebaseAuth;
 
 import java.util.List;
@@ -52,6 +53,12 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
         holder.bind(participant);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull UserViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.profileImage);
+    }
+
     @Override
     public int getItemCount() {
         return userList.size();
@@ -79,11 +86,7 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
             nameText.setText(participant.getFirstName() + " " + participant.getLastName());
 
             // Set profile image if available
-            if (participant.getProfilePicture() != null) {
-                profileImage.setImageBitmap(ImageHandler.base64ToBitmap(participant.getProfilePicture()));
-            } else {
-                profileImage.setImageResource(R.drawable.default_avatar);
-            }
+            ImageLoader.getInstance(itemView.getContext()).loadProfilePicture(participant, profileImage, R.drawable.default_avatar);
 
             // Hide follow button in followers/following list if needed
             if (!showFollowButton || participant.getUsername().equals(currentUsername)) {
@@ -105,26 +108,22 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
         }
 
         private void updateFollowButtonState(Participant participant) {
-            // Check if already following
-            participantRepository.isFollowing(currentUsername, participant.getUsername(), isFollowing -> {
-                if (isFollowing) {
+            String username = participant.getUsername();
+            // Answered from the follow graph once it has loaded, so binding costs no reads
+            participantRepository.fetchRelationship(currentUsername, username, relationship -> {
+                if (!username.equals(usernameText.getText().toString())) {
+                    // The row was bound to another participant while reading
+                    return;
+                }
+                if (relationship == FollowGraph.Relationship.FOLLOWING) {
                     followButton.setText("Following");
                     followButton.setEnabled(false);
+                } else if (relationship == FollowGraph.Relationship.REQUESTED) {
+                    followButton.setText("Requested");
+                    followButton.setEnabled(false);
                 } else {
-                    // Check if a follow request exists
-                    participantRepository.checkFollowRequestExists(currentUsername, participant.getUsername(), requestExists -> {
-                        if (requestExists) {
-                            followButton.setText("Requested");
-                            followButton.setEnabled(false);
-                        } else {
-                            followButton.setText("Follow");
-                            followButton.setEnabled(true);
-                        }
-                    }, e -> {
-                        // Default to Follow if error
-                        followButton.setText("Follow");
-                        followButton.setEnabled(true);
-                    });
+                    followButton.setText("Follow");
+                    followButton.setEnabled(true);
                 }
             }, e -> {
                 // Default to Follow if error
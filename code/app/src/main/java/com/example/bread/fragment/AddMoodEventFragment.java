@@ -30,7 +30,8 @@ import com.example.bread.R;
 import com.example.bread.model.MoodEvent;
 import com.example.bread.repository.MoodEventRepository;
 import com.example.bread.repository.ParticipantRepository;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageIngestor;
+import com.example.bread.utils.ImageLoader;
 import com.example.bread.utils.LocationHandler;
 import com.example.bread.view.HomePage;
 import com.google.firebase.auth.FirebaseAuth;
@@ -55,6 +56,7 @@ public class AddMoodEventFragment extends Fragment {
     private ImageButton uploadImage;
     private ActivityResultLauncher<Intent> resultLauncher;
     private String imageBase64;
+    private ImageIngestor.Ingestion imageIngestion;
 
     private ActivityResultLauncher<String> requestPermissionLauncher;
 
@@ -275,6 +277,7 @@ public class AddMoodEventFragment extends Fragment {
         super.onDestroyView();
         Log.i(TAG, "Fragment view destroyed, stopping location updates");
         locationHandler.stopLocationUpdates();
+        cancelImageIngestion();
     }
 
     @Override
@@ -298,26 +301,56 @@ public class AddMoodEventFragment extends Fragment {
                             Log.e(TAG, "No image selected.");
                             return; // Exit early to prevent crashes
                         }
-                        try {
-                            Uri imageUri = result.getData().getData();
-                            if (imageUri != null){
-                                uploadImage.setImageURI(imageUri);
-                                imageBase64 = ImageHandler.compressImageToBase64(requireContext(), result.getData().getData());
-                                Log.d(TAG, "Image selected and converted: " + imageBase64);
-                                Toast.makeText(requireContext(), "Image successfully uploaded.", Toast.LENGTH_SHORT).show();
-                            }
-                            else{
-                                Log.e(TAG, "No image selected.");
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "User canceled image selection.");
-                            Toast.makeText(requireContext(), "No Image Selected", Toast.LENGTH_SHORT).show();
+                        Uri imageUri = result.getData().getData();
+                        if (imageUri != null){
+                            ingestImage(imageUri);
+                        }
+                        else{
+                            Log.e(TAG, "No image selected.");
                         }
                     }
                 }
         );
     }
 
+    /**
+     * Converts a picked image in the background, showing the progress on the save button. Picking
+     * another image or leaving the screen cancels the conversion.
+     *
+     * @param imageUri the URI of the picked image
+     */
+    private void ingestImage(Uri imageUri) {
+        cancelImageIngestion();
+        saveButton.setEnabled(false);
+        imageIngestion = ImageIngestor.getInstance().ingest(requireContext(), imageUri,
+                percent -> saveButton.setText("Processing image " + percent + "%"),
+                base64 -> {
+                    imageBase64 = base64;
+                    resetSaveButton();
+                    ImageLoader.getInstance(uploadImage.getContext()).load(imageBase64, uploadImage, R.drawable.camera_icon);
+                    Log.d(TAG, "Image selected and converted: " + imageBase64.length() + " characters");
+                    Toast.makeText(requireContext(), "Image successfully uploaded.", Toast.LENGTH_SHORT).show();
+                },
+                e -> {
+                    resetSaveButton();
+                    Log.e(TAG, "Failed to convert the selected image", e);
+                    Toast.makeText(requireContext(), "Failed to load image", Toast.LENGTH_SHORT).show();
+                });
+    }
+
+    private void cancelImageIngestion() {
+        if (imageIngestion != null) {
+            imageIngestion.cancel();
+            imageIngestion = null;
+            resetSaveButton();
+        }
+    }
+
+    private void resetSaveButton() {
+        saveButton.setEnabled(true);
+        saveButton.setText("Save");
+    }
+
     /**
      * Allows user to pick an image from camera roll
      * Uses resultLauncher to launch image picking activity
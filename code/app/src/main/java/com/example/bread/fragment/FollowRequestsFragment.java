@@ -19,6 +19,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.bread.R;
 import com.example.bread.controller.FollowRequestAdapter;
 import com.example.bread.model.FollowRequest;
+import com.example.bread.repository.FollowGraph;
+import com.example.bread.repository.MoodEventRepository;
 import com.example.bread.repository.ParticipantRepository;
 import com.google.firebase.auth.FirebaseAuth;
 
@@ -35,6 +37,7 @@ public class FollowRequestsFragment extends Fragment implements FollowRequestAda
 
     private FollowRequestAdapter requestAdapter;
     private ParticipantRepository participantRepository;
+    private MoodEventRepository moodEventRepository;
     private String currentUsername;
     private List<FollowRequest> requestsList = new ArrayList<>();
 
@@ -42,6 +45,7 @@ public class FollowRequestsFragment extends Fragment implements FollowRequestAda
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         participantRepository = new ParticipantRepository();
+        moodEventRepository = new MoodEventRepository();
 
         // Get current username
         if (FirebaseAuth.getInstance().getCurrentUser() != null) {
@@ -109,6 +113,9 @@ public class FollowRequestsFragment extends Fragment implements FollowRequestAda
         progressBar.setVisibility(View.VISIBLE);
 
         participantRepository.acceptFollowRequest(currentUsername, requestorUsername, unused -> {
+            // Give the new follower our recent mood events in their feed
+            moodEventRepository.backfillFeed(requestorUsername, currentUsername);
+
             // Remove from list and update UI
             requestsList.remove(position);
             requestAdapter.notifyItemRemoved(position);
@@ -131,45 +138,31 @@ public class FollowRequestsFragment extends Fragment implements FollowRequestAda
      * before showing the follow back dialog
      */
     private void checkFollowRelationship(String requestorUsername) {
-        // First check if already following
-        participantRepository.isFollowing(currentUsername, requestorUsername, isAlreadyFollowing -> {
-            if (isAlreadyFollowing) {
-                // Already following this user, no need for follow back dialog
+        participantRepository.fetchRelationship(currentUsername, requestorUsername, relationship -> {
+            if (relationship != FollowGraph.Relationship.NONE) {
+                // Already following or requested this user, no need for follow back dialog
                 Toast.makeText(getContext(), "Follow request accepted", Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            // Then check if a follow request already exists from current user to requestor
-            participantRepository.checkFollowRequestExists(currentUsername, requestorUsername, requestExists -> {
-                if (requestExists) {
-                    // A follow request already exists, no need for follow back dialog
-                    Toast.makeText(getContext(), "Follow request accepted", Toast.LENGTH_SHORT).show();
-                } else {
-                    // No existing relationship, show follow back dialog
-                    if (getContext() != null) {
-                        new AlertDialog.Builder(getContext())
-                                .setTitle("Follow Back")
-                                .setMessage("Do you want to follow " + requestorUsername + " back?")
-                                .setPositiveButton("Follow", (dialog, which) -> {
-                                    sendFollowBackRequest(requestorUsername);
-                                })
-                                .setNegativeButton("Not Now", null)
-                                .setCancelable(true)
-                                .show();
-
-                        Toast.makeText(getContext(), "Follow request accepted", Toast.LENGTH_SHORT).show();
-                    }
-                }
-            }, e -> {
-                // In case of error, still show toast for acceptance
-                Toast.makeText(getContext(), "Follow request accepted", Toast.LENGTH_SHORT).show();
-                Log.e(TAG, "Error checking follow request status", e);
-            });
+            // No existing relationship, show follow back dialog
+            if (getContext() != null) {
+                new AlertDialog.Builder(getContext())
+                        .setTitle("Follow Back")
+                        .setMessage("Do you want to follow " + requestorUsername + " back?")
+                        .setPositiveButton("Follow", (dialog, which) -> {
+                            sendFollowBackRequest(requestorUsername);
+                        })
+                        .setNegativeButton("Not Now", null)
+                        .setCancelable(true)
+                        .show();
 
+                Toast.makeText(getContext(), "Follow request accepted", Toast.LENGTH_SHORT).show();
+            }
         }, e -> {
             // In case of error, still show toast for acceptance
             Toast.makeText(getContext(), "Follow request accepted", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "Error checking following status", e);
+            Log.e(TAG, "Error checking follow status", e);
         });
     }
 
@@ -2,7 +2,6 @@ package com.example.bread.fragment;
 
 import android.app.AlertDialog;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.net.Uri;
@@ -37,7 +36,8 @@ import com.example.bread.model.MoodEvent.EmotionalState;
 import com.example.bread.model.MoodEvent.SocialSituation;
 import com.example.bread.repository.MoodEventRepository;
 import com.example.bread.repository.ParticipantRepository;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageIngestor;
+import com.example.bread.utils.ImageLoader;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.switchmaterial.SwitchMaterial;
@@ -74,6 +74,10 @@ public class HistoryFragment extends Fragment {
     private ImageButton editImage;
     private ActivityResultLauncher<Intent> resultLauncher;
     private String imageBase64;
+    // Whether the stored image of the mood event being edited was removed
+    private boolean imageRemoved;
+    private ImageIngestor.Ingestion imageIngestion;
+    private Button editSaveButton;
 
     // Filter-related variables
     private FloatingActionButton filterButton;
@@ -237,13 +241,11 @@ public class HistoryFragment extends Fragment {
         socialSituationTextView.setText(situation != null ? situation.toString() : "Not specified");
 
         // Set image
-        String imageBase64 = moodEvent.getAttachedImage();
-        if (imageBase64 == null || imageBase64.isEmpty()) {
+        if (!moodEvent.hasAttachedImage()) {
             moodImageView.setVisibility(View.GONE);  // Hide if image not uploaded
             imageSelection.setText("No image uploaded.");
         } else {
-            Bitmap bitmap = ImageHandler.base64ToBitmap(imageBase64);
-            moodImageView.setImageBitmap(bitmap);
+            ImageLoader.getInstance(moodImageView.getContext()).loadMoodEventImage(moodEvent, moodImageView, 0);
             moodImageView.setVisibility(View.VISIBLE);  // Show when image is uploaded
             imageSelection.setText("");
         }
@@ -283,7 +285,9 @@ public class HistoryFragment extends Fragment {
 
         titleEditText.setText(moodEvent.getTitle() != null ? moodEvent.getTitle() : "");
         reasonEditText.setText(moodEvent.getReason() != null ? moodEvent.getReason() : "");
+        // Only a newly picked image is uploaded, a stored image stays referenced by its hash
         imageBase64 = moodEvent.getAttachedImage();
+        imageRemoved = false;
 
         ArrayAdapter<EmotionalState> emotionAdapter = new ArrayAdapter<>(
                 getContext(),
@@ -293,9 +297,9 @@ public class HistoryFragment extends Fragment {
         emotionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         emotionSpinner.setAdapter(emotionAdapter);
 
-        if (moodEvent.getAttachedImage() != null){
+        if (moodEvent.hasAttachedImage()){
             // If image already assigned it is displayed on image button, and blank if not
-            editImage.setImageBitmap(ImageHandler.base64ToBitmap(moodEvent.getAttachedImage()));
+            ImageLoader.getInstance(editImage.getContext()).loadMoodEventListImage(moodEvent, editImage, R.drawable.camera_icon);
         }
 
         if (moodEvent.getEmotionalState() != null) {
@@ -320,7 +324,10 @@ public class HistoryFragment extends Fragment {
         }
 
         deleteImageButton.setOnClickListener(v -> {
+            cancelImageIngestion();
             imageBase64 = null;
+            imageRemoved = true;
+            ImageLoader.getInstance(editImage.getContext()).cancel(editImage);
             editImage.setImageDrawable(null);
             editImage.setImageResource(R.drawable.camera_icon);
         });
@@ -360,10 +367,13 @@ public class HistoryFragment extends Fragment {
         builder.setNegativeButton("Cancel", (d, which) -> d.dismiss());
 
         AlertDialog dialog = builder.create();
+        // Stop converting a picked image nobody will save
+        dialog.setOnDismissListener(d -> cancelImageIngestion());
         dialog.show();
 
         // **Override the Save Button Behavior**
         Button saveButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
+        editSaveButton = saveButton;
         saveButton.setOnClickListener(v -> {
             boolean isValid = true;
 
@@ -404,6 +414,11 @@ public class HistoryFragment extends Fragment {
             moodEvent.setReason(newReason);
             moodEvent.setSocialSituation(newSocialSituation);
             moodEvent.setAttachedImage(imageBase64);
+            if (imageRemoved) {
+                moodEvent.setAttachedImageHash(null);
+                moodEvent.setAttachedImageListHash(null);
+                moodEvent.setAttachedImageBlurHash(null);
+            }
 
             // Save to Firebase
             moodsRepo.updateMoodEvent(moodEvent,
@@ -444,26 +459,66 @@ public class HistoryFragment extends Fragment {
                             Log.e(TAG, "No image selected.");
                             return;
                         }
-                        try {
-                            Uri imageUri = result.getData().getData();
-                            if (imageUri != null){
-                                // Changes image on the button if user changes image
-                                editImage.setImageURI(imageUri);
-                                // Assigns new image to our global variable that is then assigned to moodEvent
-                                imageBase64 = ImageHandler.compressImageToBase64(requireContext(), result.getData().getData());
-                                Log.d(TAG, "Image selected and converted: " + imageBase64);
-                            }
-                            else{
-                                Log.e(TAG, "No image selected.");
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "User did not change image.");
+                        Uri imageUri = result.getData().getData();
+                        if (imageUri != null){
+                            ingestImage(imageUri);
+                        }
+                        else{
+                            Log.e(TAG, "No image selected.");
                         }
                     }
                 }
         );
     }
 
+    /**
+     * Converts a picked image in the background, showing the progress on the save button of the edit
+     * dialog. Picking another image or closing the dialog cancels the conversion.
+     *
+     * @param imageUri the URI of the picked image
+     */
+    private void ingestImage(Uri imageUri) {
+        cancelImageIngestion();
+        ImageLoader.getInstance(editImage.getContext()).cancel(editImage);
+        if (editSaveButton != null) {
+            editSaveButton.setEnabled(false);
+        }
+        imageIngestion = ImageIngestor.getInstance().ingest(requireContext(), imageUri,
+                percent -> {
+                    if (editSaveButton != null) {
+                        editSaveButton.setText("Processing image " + percent + "%");
+                    }
+                },
+                base64 -> {
+                    // Assigns new image to our global variable that is then assigned to moodEvent
+                    imageBase64 = base64;
+                    resetEditSaveButton();
+                    // Changes image on the button if user changes image
+                    ImageLoader.getInstance(editImage.getContext()).load(imageBase64, editImage, R.drawable.camera_icon);
+                    Log.d(TAG, "Image selected and converted: " + imageBase64.length() + " characters");
+                },
+                e -> {
+                    resetEditSaveButton();
+                    Log.e(TAG, "Failed to convert the selected image", e);
+                    Toast.makeText(requireContext(), "Failed to load image", Toast.LENGTH_SHORT).show();
+                });
+    }
+
+    private void cancelImageIngestion() {
+        if (imageIngestion != null) {
+            imageIngestion.cancel();
+            imageIngestion = null;
+            resetEditSaveButton();
+        }
+    }
+
+    private void resetEditSaveButton() {
+        if (editSaveButton != null) {
+            editSaveButton.setEnabled(true);
+            editSaveButton.setText("Save");
+        }
+    }
+
     /**
      * Allows user to pick an image from camera roll
      * Uses resultLauncher to launch image picking activity
@@ -13,6 +13,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
@@ -22,6 +23,7 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
@@ -33,8 +35,14 @@ import com.example.bread.controller.HomeMoodEventArrayAdapter;
 import com.example.bread.controller.UserAdapter;
 import com.example.bread.model.MoodEvent;
 import com.example.bread.model.Participant;
+import com.example.bread.repository.FeedCache;
+import com.example.bread.repository.FeedPage;
+import com.example.bread.repository.FollowGraph;
+import com.example.bread.repository.LiveFeed;
 import com.example.bread.repository.MoodEventRepository;
 import com.example.bread.repository.ParticipantRepository;
+import com.example.bread.repository.UserSearch;
+import com.example.bread.utils.FeedUtils;
 import com.example.bread.view.LoginPage;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.switchmaterial.SwitchMaterial;
@@ -43,10 +51,8 @@ import com.google.firebase.auth.FirebaseUser;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents the home page of the app, where users can view mood events from users they follow.
@@ -63,6 +69,18 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
     private ProgressBar moodsLoadingIndicator;
     private TextView emptyMoodsView;
 
+    // Feed paging
+    private static final int FEED_PAGE_SIZE = MoodEventRepository.DEFAULT_FEED_PAGE_SIZE;
+    // Start loading the next page when this many rows are left below the visible ones
+    private static final int FEED_PREFETCH_DISTANCE = 5;
+    // Followed users whose events have not arrived by then are shown as they come in
+    private static final long FEED_STREAM_DEADLINE_MS = 5000;
+    private FeedPage lastFeedPage;
+    private LiveFeed liveFeed;
+    private boolean liveFeedReset = false;
+    private FollowGraph followGraph;
+    private boolean isLoadingFeed = false;
+
     // Search section
     private EditText searchEditText;
     private RecyclerView userRecyclerView;
@@ -79,11 +97,9 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
     // User search
     private UserAdapter userAdapter;
     private List<Participant> userList = new ArrayList<>();
-    private AtomicBoolean isSearching = new AtomicBoolean(false);
-
-    // Handler for delayed searches
-    private Runnable searchRunnable;
-    private final long SEARCH_DELAY_MS = 500;
+    // Debounces searches and drops the results of superseded ones
+    private UserSearch userSearch;
+    private static final int SUGGESTION_LIMIT = 10;
 
     // Filter-related variables
     private FloatingActionButton filterButton;
@@ -124,7 +140,9 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
 
         mAuth = FirebaseAuth.getInstance();
         moodEventRepository = new MoodEventRepository();
+        moodEventRepository.setFeedCache(FeedCache.getInstance(requireContext()));
         participantRepository = new ParticipantRepository();
+        userSearch = new UserSearch(participantRepository);
 
         // Get current user
         FirebaseUser user = mAuth.getCurrentUser();
@@ -156,6 +174,19 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
         // Set click listener for mood events
         moodEventArrayAdapter.setOnMoodEventClickListener(this::showMoodDetailsDialog);
 
+        // Load the next page of the feed as the user scrolls towards the end of the list
+        moodEventListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {}
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount - FEED_PREFETCH_DISTANCE) {
+                    fetchNextMoodEventsPage();
+                }
+            }
+        });
+
         // Fetch mood events
         fetchMoodEvents();
 
@@ -171,7 +202,13 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
         userRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         userRecyclerView.setAdapter(userAdapter);
 
-        // Set up search text watcher with debounce
+        // Start mirroring relationships now, so follow buttons bind without reads by the time of a search
+        if (currentUsername != null) {
+            followGraph = participantRepository.getFollowGraph(currentUsername);
+            followGraph.addObserver(followGraphObserver);
+        }
+
+        // Set up search text watcher; UserSearch debounces the queries
         searchEditText.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
@@ -183,22 +220,13 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
             public void afterTextChanged(Editable s) {
                 String query = s.toString().trim();
 
-                // Cancel any pending search
-                if (searchRunnable != null) {
-                    searchEditText.removeCallbacks(searchRunnable);
-                }
-
                 if (query.length() >= 2) {
-                    // Show loading indicator
-                    searchProgressBar.setVisibility(View.VISIBLE);
-                    searchEmptyView.setVisibility(View.GONE);
-
-                    // Create a new search with delay to debounce input
-                    searchRunnable = () -> searchUsers(query);
-                    searchEditText.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+                    searchUsers(query);
                 } else {
-                    // Clear results when search is cleared
+                    // Cancel any pending search, clear results, and suggest people instead
+                    userSearch.cancel();
                     clearSearchResults();
+                    showSuggestions();
                 }
             }
         });
@@ -217,6 +245,25 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
         searchProgressBar.setVisibility(View.GONE);
     }
 
+    /**
+     * Shows people the user may know, followed by the most people they follow, while no search is typed
+     */
+    private void showSuggestions() {
+        if (currentUsername == null) {
+            return;
+        }
+        participantRepository.fetchFollowSuggestions(currentUsername, SUGGESTION_LIMIT, suggestions -> {
+            // A search may have started while the suggestions were loading
+            if (!isAdded() || searchEditText.getText().toString().trim().length() >= 2) {
+                return;
+            }
+            userList.clear();
+            userList.addAll(suggestions);
+            userAdapter.notifyDataSetChanged();
+            userRecyclerView.setVisibility(suggestions.isEmpty() ? View.GONE : View.VISIBLE);
+        }, e -> Log.e(TAG, "Error fetching follow suggestions", e));
+    }
+
     /**
      * Shows the search container and displays keyboard
      */
@@ -224,6 +271,7 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
         if (searchContainer != null) {
             searchContainer.setVisibility(View.VISIBLE);
             searchEditText.requestFocus();
+            showSuggestions();
 
             // Show keyboard
             try {
@@ -259,34 +307,26 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
     }
 
     /**
-     * Fetches mood events from users the current user is following
+     * Starts observing the live feed of mood events from users the current user is following.
+     * If the live feed is already running, its current events are shown without any reads.
      */
     private void fetchMoodEvents() {
         FirebaseUser user = mAuth.getCurrentUser();
         if (user != null) {
             String username = user.getDisplayName();
             if (username != null) {
-                moodEventRepository.fetchForEventsFromFollowing(username, moodEvents -> {
-                    if (moodEvents != null) {
-                        moodEventArrayList.clear();
-                        moodEventArrayList.addAll(moodEvents);
-                        moodEventArrayList.sort(Comparator.reverseOrder());
-
-                        // Save all mood events for filtering
-                        allMoodEvents.clear();
-                        allMoodEvents.addAll(moodEventArrayList);
-
-                        // Reapply any existing filters
-                        if (isFilteringByWeek || selectedEmotionalState != null || !searchKeyword.isEmpty()) {
-                            applyFilters();
-                        } else {
-                            moodEventArrayAdapter.notifyDataSetChanged();
+                isLoadingFeed = true;
+                liveFeedReset = false;
+                liveFeed = moodEventRepository.getLiveHomeFeed(username);
+                if (!liveFeed.isInitialized()) {
+                    // Show the feed cached on the device while the live feed loads
+                    moodEventRepository.fetchCachedHomeFeed(username, cachedEvents -> {
+                        if (!liveFeedReset && allMoodEvents.isEmpty() && !cachedEvents.isEmpty()) {
+                            mergeMoodEvents(cachedEvents);
                         }
-                    }
-                }, e -> {
-                    Log.e(TAG, "Failed to fetch mood events for user: " + username, e);
-                    Toast.makeText(getContext(), "Failed to fetch mood events", Toast.LENGTH_SHORT).show();
-                });
+                    });
+                }
+                liveFeed.addObserver(liveFeedObserver);
             }
         } else {
             Log.e(TAG, "User is not logged in");
@@ -296,21 +336,204 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
         }
     }
 
+    // Rebinds the follow buttons of the search results when a relationship changes
+    private final FollowGraph.Observer followGraphObserver = () -> {
+        if (userAdapter != null) {
+            userAdapter.notifyDataSetChanged();
+        }
+    };
+
+    /**
+     * Applies the changes of the live feed to the list, rebinding only the rows that changed
+     */
+    private final LiveFeed.Observer liveFeedObserver = new LiveFeed.Observer() {
+        @Override
+        public void onReset(@NonNull List<MoodEvent> events, @NonNull FeedPage headPage) {
+            isLoadingFeed = false;
+            liveFeedReset = true;
+            lastFeedPage = headPage;
+
+            // Save all mood events for filtering
+            allMoodEvents.clear();
+            if (events.isEmpty() && !headPage.hasMore()) {
+                // Feed inbox not populated yet, read from the followed users directly
+                FirebaseUser user = mAuth.getCurrentUser();
+                if (user != null && user.getDisplayName() != null) {
+                    streamMoodEventsFromFollowing(user.getDisplayName());
+                }
+                return;
+            }
+            mergeMoodEvents(events);
+        }
+
+        @Override
+        public void onEventAdded(@NonNull MoodEvent event) {
+            if (indexOfEvent(allMoodEvents, event.getId()) >= 0) {
+                onEventChanged(event);
+                return;
+            }
+            int index = FeedUtils.insertionIndex(allMoodEvents, event);
+            allMoodEvents.add(index, event);
+            if (isFiltering()) {
+                applyFilters();
+            } else {
+                moodEventArrayList.add(index, event);
+                moodEventArrayAdapter.notifyDataSetChanged();
+            }
+        }
+
+        @Override
+        public void onEventChanged(@NonNull MoodEvent event) {
+            int index = indexOfEvent(allMoodEvents, event.getId());
+            if (index < 0) {
+                onEventAdded(event);
+                return;
+            }
+            allMoodEvents.remove(index);
+            int newIndex = FeedUtils.insertionIndex(allMoodEvents, event);
+            allMoodEvents.add(newIndex, event);
+            if (isFiltering() || newIndex != index) {
+                showMoodEvents();
+                return;
+            }
+            moodEventArrayList.set(index, event);
+            rebindMoodEventRow(index);
+        }
+
+        @Override
+        public void onEventRemoved(@NonNull MoodEvent event) {
+            int index = indexOfEvent(allMoodEvents, event.getId());
+            if (index < 0) {
+                return;
+            }
+            allMoodEvents.remove(index);
+            if (isFiltering()) {
+                applyFilters();
+            } else {
+                moodEventArrayList.remove(index);
+                moodEventArrayAdapter.notifyDataSetChanged();
+            }
+        }
+    };
+
+    /**
+     * Rebinds a single row of the mood event list if it is visible, without refreshing the others
+     *
+     * @param position The position of the row in the list
+     */
+    private void rebindMoodEventRow(int position) {
+        View row = moodEventListView.getChildAt(position - moodEventListView.getFirstVisiblePosition());
+        if (row != null) {
+            moodEventArrayAdapter.getView(position, row, moodEventListView);
+        }
+    }
+
+    private static int indexOfEvent(List<MoodEvent> events, String eventId) {
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).getId().equals(eventId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isFiltering() {
+        return isFilteringByWeek || selectedEmotionalState != null || !searchKeyword.isEmpty();
+    }
+
+    /**
+     * Fetches the next page of mood events, if there is one and no page is already loading
+     */
+    private void fetchNextMoodEventsPage() {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (isLoadingFeed || lastFeedPage == null || !lastFeedPage.hasMore() || user == null || user.getDisplayName() == null) {
+            return;
+        }
+        String username = user.getDisplayName();
+        isLoadingFeed = true;
+        moodsLoadingIndicator.setVisibility(View.VISIBLE);
+        moodEventRepository.fetchHomeFeedPage(username, lastFeedPage, FEED_PAGE_SIZE, page -> {
+            isLoadingFeed = false;
+            lastFeedPage = page;
+            moodsLoadingIndicator.setVisibility(View.GONE);
+
+            mergeMoodEvents(page.getEvents());
+        }, e -> {
+            isLoadingFeed = false;
+            moodsLoadingIndicator.setVisibility(View.GONE);
+            Log.e(TAG, "Failed to fetch next page of mood events for user: " + username, e);
+        });
+    }
+
+    /**
+     * Streams mood events from each followed user into the list as their queries complete
+     *
+     * @param username The username of the current user
+     */
+    private void streamMoodEventsFromFollowing(String username) {
+        isLoadingFeed = true;
+        moodsLoadingIndicator.setVisibility(View.VISIBLE);
+        moodEventRepository.streamForEventsFromFollowing(username, FEED_STREAM_DEADLINE_MS, new MoodEventRepository.FeedStreamListener() {
+            @Override
+            public void onBatch(@NonNull List<MoodEvent> batch) {
+                mergeMoodEvents(batch);
+            }
+
+            @Override
+            public void onSettled(int pendingQueries) {
+                isLoadingFeed = false;
+                moodsLoadingIndicator.setVisibility(View.GONE);
+            }
+
+            @Override
+            public void onLateBatch(@NonNull List<MoodEvent> batch) {
+                Log.d(TAG, "Late batch of " + batch.size() + " mood events arrived");
+                mergeMoodEvents(batch);
+            }
+        }, e -> {
+            isLoadingFeed = false;
+            moodsLoadingIndicator.setVisibility(View.GONE);
+            Log.e(TAG, "Failed to fetch mood events for user: " + username, e);
+            Toast.makeText(getContext(), "Failed to fetch mood events", Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    /**
+     * Merges newly loaded mood events, sorted newest first, into the loaded ones and shows them
+     *
+     * @param events The newly loaded mood events
+     */
+    private void mergeMoodEvents(List<MoodEvent> events) {
+        List<MoodEvent> merged = FeedUtils.mergeNewestFirst(allMoodEvents, events);
+        allMoodEvents.clear();
+        allMoodEvents.addAll(merged);
+        showMoodEvents();
+    }
+
+    /**
+     * Shows the loaded mood events, newest first, reapplying any active filters
+     */
+    private void showMoodEvents() {
+        if (isFiltering()) {
+            applyFilters();
+        } else {
+            moodEventArrayList.clear();
+            moodEventArrayList.addAll(allMoodEvents);
+            moodEventArrayAdapter.notifyDataSetChanged();
+        }
+    }
+
     /**
      * Performs search for users by username
      *
      * @param query The search query (username prefix)
      */
     private void searchUsers(String query) {
-        if (isSearching.get()) {
-            return; // Prevent multiple concurrent searches
-        }
-
-        isSearching.set(true);
         searchProgressBar.setVisibility(View.VISIBLE);
         searchEmptyView.setVisibility(View.GONE);
 
-        participantRepository.searchUsersByUsername(query, participants -> {
+        // Starting a search cancels the previous one, so only the results of the latest query arrive
+        userSearch.search(query, participants -> {
             userList.clear();
 
             // Filter out the current user from results
@@ -323,12 +546,10 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
             userAdapter.notifyDataSetChanged();
             updateSearchEmptyView();
             searchProgressBar.setVisibility(View.GONE);
-            isSearching.set(false);
         }, e -> {
             Log.e(TAG, "Error searching users", e);
             Toast.makeText(getContext(), "Error searching users", Toast.LENGTH_SHORT).show();
             searchProgressBar.setVisibility(View.GONE);
-            isSearching.set(false);
             updateSearchEmptyView();
         });
     }
@@ -366,35 +587,27 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
     public void onFollowClick(Participant participant) {
         searchProgressBar.setVisibility(View.VISIBLE);
 
-        // First check if already following
-        participantRepository.isFollowing(currentUsername, participant.getUsername(), isFollowing -> {
-            if (isFollowing) {
+        // Answered from the follow graph once it has loaded
+        participantRepository.fetchRelationship(currentUsername, participant.getUsername(), relationship -> {
+            if (relationship == FollowGraph.Relationship.FOLLOWING) {
                 Toast.makeText(getContext(), "You are already following this user", Toast.LENGTH_SHORT).show();
                 searchProgressBar.setVisibility(View.GONE);
                 return;
             }
+            if (relationship == FollowGraph.Relationship.REQUESTED) {
+                Toast.makeText(getContext(), "Follow request already sent", Toast.LENGTH_SHORT).show();
+                searchProgressBar.setVisibility(View.GONE);
+                return;
+            }
 
-            // Then check if a follow request already exists
-            participantRepository.checkFollowRequestExists(currentUsername, participant.getUsername(), requestExists -> {
-                if (requestExists) {
-                    Toast.makeText(getContext(), "Follow request already sent", Toast.LENGTH_SHORT).show();
-                    searchProgressBar.setVisibility(View.GONE);
-                    return;
-                }
-
-                // Send follow request
-                participantRepository.sendFollowRequest(currentUsername, participant.getUsername(), unused -> {
-                    Toast.makeText(getContext(), "Follow request sent", Toast.LENGTH_SHORT).show();
-                    updateFollowButtonState(participant.getUsername());
-                    searchProgressBar.setVisibility(View.GONE);
-                }, e -> {
-                    Log.e(TAG, "Error sending follow request", e);
-                    Toast.makeText(getContext(), "Error sending follow request", Toast.LENGTH_SHORT).show();
-                    searchProgressBar.setVisibility(View.GONE);
-                });
+            // Send follow request
+            participantRepository.sendFollowRequest(currentUsername, participant.getUsername(), unused -> {
+                Toast.makeText(getContext(), "Follow request sent", Toast.LENGTH_SHORT).show();
+                updateFollowButtonState(participant.getUsername());
+                searchProgressBar.setVisibility(View.GONE);
             }, e -> {
-                Log.e(TAG, "Error checking follow request", e);
-                Toast.makeText(getContext(), "Error checking follow status", Toast.LENGTH_SHORT).show();
+                Log.e(TAG, "Error sending follow request", e);
+                Toast.makeText(getContext(), "Error sending follow request", Toast.LENGTH_SHORT).show();
                 searchProgressBar.setVisibility(View.GONE);
             });
         }, e -> {
@@ -631,6 +844,19 @@ public class HomeFragment extends Fragment implements UserAdapter.UserInteractio
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // The live feed keeps running so that coming back to this screen costs no reads
+        if (liveFeed != null) {
+            liveFeed.removeObserver(liveFeedObserver);
+        }
+        if (followGraph != null) {
+            followGraph.removeObserver(followGraphObserver);
+        }
+        userSearch.cancel();
+    }
+
     @Override
     public void onPause() {
         super.onPause();
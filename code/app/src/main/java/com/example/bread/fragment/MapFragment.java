@@ -21,6 +21,10 @@ import com.example.bread.utils.LocationHandler;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents the map page of the app, where users can view a map of their location and nearby
  * mood events.
@@ -28,9 +32,12 @@ import com.google.firebase.auth.FirebaseUser;
 public class MapFragment extends Fragment {
 
     private static final String TAG = "MapFragment";
+    private static final double SEARCH_RADIUS_KM = 5.0;
     private FirebaseAuth mAuth;
     private MoodEventRepository moodEventRepo;
     private ParticipantRepository participantRepository;
+    // The located mood events loaded for the map, by id
+    private final Map<String, MoodEvent> mapEvents = new LinkedHashMap<>();
 
     /**
      * These two fields are used to handle location permissions and fetching the user's location.
@@ -95,12 +102,11 @@ public class MapFragment extends Fragment {
             return;
         }
         moodEventRepo.fetchEventsWithParticipantRef(participantRepository.getParticipantRef(username), moodEvents -> {
-            for (MoodEvent event : moodEvents) {
-                if (event.getGeoInfo() != null) {
-                    // TODO: collect these events here in a combined list to display on the map
-                    Log.d(TAG, "Fetched mood event: " + event);
-                }
+            // The map may have been left while the query was running
+            if (!isAdded()) {
+                return;
             }
+            addMapEvents(moodEvents);
         }, e -> {
             Log.e(TAG, "Failed to fetch mood events", e);
         });
@@ -111,6 +117,9 @@ public class MapFragment extends Fragment {
         if (currentLocation == null) {
             Log.i(TAG, "Location not available yet, waiting for location callback");
             locationHandler.fetchUserLocation(location -> {
+                if (!isAdded()) {
+                    return;
+                }
                 Log.i(TAG, "Location callback received, fetching mood events");
                 doFetchInRadiusMoodEvents(location);
             });
@@ -121,6 +130,18 @@ public class MapFragment extends Fragment {
     }
 
     private void doFetchInRadiusMoodEvents(@NonNull Location currentLocation) {
+        // The map has no camera yet, so the viewport is the search radius around the participant
+        double latitudeDelta = SEARCH_RADIUS_KM / 111.32;
+        double longitudeDelta = latitudeDelta / Math.max(Math.cos(Math.toRadians(currentLocation.getLatitude())), 0.01);
+        loadViewport(currentLocation.getLatitude() - latitudeDelta, currentLocation.getLongitude() - longitudeDelta,
+                currentLocation.getLatitude() + latitudeDelta, currentLocation.getLongitude() + longitudeDelta);
+    }
+
+    /**
+     * Loads the mood events of the followed participants in the circle around the given viewport.
+     * Cells loaded recently are served from the cache, so panning only queries the newly exposed cells.
+     */
+    private void loadViewport(double south, double west, double north, double east) {
         FirebaseUser user = mAuth.getCurrentUser();
         if (user == null) {
             Log.e(TAG, "Cannot fetch mood events without a signed-in user");
@@ -131,16 +152,30 @@ public class MapFragment extends Fragment {
             Log.e(TAG, "Cannot fetch mood events without a username");
             return;
         }
-        moodEventRepo.fetchForInRadiusEventsFromFollowing(username, currentLocation, 5.0, moodEvents -> {
-            // TODO: collect these events here in a combined list to display on the map
-            for (MoodEvent moodEvent : moodEvents) {
-                Log.d(TAG, "Fetched mood event: " + moodEvent.toString());
+        Location center = new Location("viewport");
+        center.setLatitude((south + north) / 2);
+        double longitude = west <= east ? (west + east) / 2 : (west + east + 360) / 2;
+        center.setLongitude(longitude > 180 ? longitude - 360 : longitude);
+        float[] radiusInM = new float[1];
+        Location.distanceBetween(center.getLatitude(), center.getLongitude(), north, east, radiusInM);
+        moodEventRepo.fetchForInRadiusEventsFromFollowing(username, center, radiusInM[0] / 1000, moodEvents -> {
+            if (!isAdded()) {
+                return;
             }
+            addMapEvents(moodEvents);
         }, e -> {
             Log.e(TAG, "Failed to fetch mood events", e);
         });
     }
 
+    private void addMapEvents(@NonNull List<MoodEvent> moodEvents) {
+        for (MoodEvent event : moodEvents) {
+            if (event.getGeoInfo() != null) {
+                mapEvents.put(event.getId(), event);
+            }
+        }
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -2,7 +2,6 @@ package com.example.bread.fragment;
 
 import android.app.AlertDialog;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -24,10 +23,11 @@ import com.example.bread.controller.FollowRequestAdapter;
 import com.example.bread.model.FollowRequest;
 import com.example.bread.model.MoodEvent;
 import com.example.bread.model.Participant;
+import com.example.bread.repository.FollowGraph;
 import com.example.bread.repository.MoodEventRepository;
 import com.example.bread.repository.ParticipantRepository;
 import com.example.bread.utils.EmotionUtils;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 import com.example.bread.view.LoginPage;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -58,6 +58,7 @@ public class ProfileFragment extends Fragment {
     private MoodEventRepository moodEventRepository;
     private String currentUsername;
     private ListenerRegistration participantListener;
+    private Participant participant;
 
     private FollowRequestAdapter requestAdapter;
     private List<FollowRequest> requestsList = new ArrayList<>();
@@ -196,6 +197,9 @@ public class ProfileFragment extends Fragment {
 
     private void handleAcceptRequest(String requestorUsername, int position) {
         participantRepository.acceptFollowRequest(currentUsername, requestorUsername, unused -> {
+            // Give the new follower our recent mood events in their feed
+            moodEventRepository.backfillFeed(requestorUsername, currentUsername);
+
             // Remove from list and update UI
             if (position < requestsList.size()) {
                 requestsList.remove(position);
@@ -217,29 +221,13 @@ public class ProfileFragment extends Fragment {
      * before showing the follow back dialog
      */
     private void checkFollowRelationship(String requestorUsername) {
-        // First check if already following
-        participantRepository.isFollowing(currentUsername, requestorUsername, isAlreadyFollowing -> {
-            if (isAlreadyFollowing) {
-                // Already following this user, no need for follow back dialog
-                return;
-            }
-
-            // Then check if a follow request already exists from current user to requestor
-            participantRepository.checkFollowRequestExists(currentUsername, requestorUsername, requestExists -> {
-                if (requestExists) {
-                    // A follow request already exists, no need for follow back dialog
-                } else {
-                    // No existing relationship, show follow back dialog
-                    showFollowBackDialog(requestorUsername);
-                }
-            }, e -> {
-                Log.e(TAG, "Error checking follow request status", e);
-                // In case of error, default to showing dialog
+        participantRepository.fetchRelationship(currentUsername, requestorUsername, relationship -> {
+            // Only offer to follow back without an existing relationship
+            if (relationship == FollowGraph.Relationship.NONE) {
                 showFollowBackDialog(requestorUsername);
-            });
-
+            }
         }, e -> {
-            Log.e(TAG, "Error checking following status", e);
+            Log.e(TAG, "Error checking follow status", e);
             // In case of error, default to showing dialog
             showFollowBackDialog(requestorUsername);
         });
@@ -325,9 +313,9 @@ public class ProfileFragment extends Fragment {
             moodView.setText(EmotionUtils.getEmoticon(recentMood.getEmotionalState()));
 
             // Handle image visibility
-            if (recentMood.getAttachedImage() != null && !recentMood.getAttachedImage().isEmpty()) {
+            if (recentMood.hasAttachedImage()) {
                 if (moodImageView != null) {
-                    moodImageView.setImageBitmap(ImageHandler.base64ToBitmap(recentMood.getAttachedImage()));
+                    ImageLoader.getInstance(moodImageView.getContext()).loadMoodEventListImage(recentMood, moodImageView, 0);
                     moodImageView.setVisibility(View.VISIBLE);
                 }
                 if (imageContainer != null) {
@@ -345,11 +333,8 @@ public class ProfileFragment extends Fragment {
             // Set profile picture for the recent mood event
             if (profileImageView != null) {
                 participantRepository.fetchBaseParticipant(currentUsername, participant -> {
-                    if (participant != null && participant.getProfilePicture() != null) {
-                        profileImageView.setImageBitmap(ImageHandler.base64ToBitmap(participant.getProfilePicture()));
-                    } else {
-                        profileImageView.setImageResource(R.drawable.ic_baseline_profile_24);
-                    }
+                    ImageLoader.getInstance(profileImageView.getContext()).loadProfilePicture(
+                            participant, profileImageView, R.drawable.ic_baseline_profile_24);
                 }, e -> Log.e(TAG, "Error loading profile image", e));
             }
 
@@ -369,38 +354,42 @@ public class ProfileFragment extends Fragment {
     }
 
     private void setupParticipantListener() {
-        // Replace with fetchBaseParticipant
-        fetchParticipantData();
+        if (participantListener != null) {
+            participantListener.remove();
+        }
+        // The listener also keeps the shared participant cache fresh for other screens
+        participantListener = participantRepository.listenForParticipantUpdates(currentUsername, this::updateUI);
     }
 
-    private void fetchParticipantData() {
-        participantRepository.fetchBaseParticipant(currentUsername, participant -> {
-            if (participant != null) {
-                updateUI(participant);
+    /**
+     * Update follower and following counts, which are read from their sharded counters
+     */
+    private void loadFollowCounts() {
+        if (participant == null) {
+            return;
+        }
+        participantRepository.fetchFollowerCount(participant, count -> {
+            if (followersCountText != null) {
+                followersCountText.setText(String.valueOf(count));
+            }
+        }, e -> Log.e(TAG, "Error fetching follower count", e));
+        participantRepository.fetchFollowingCount(participant, count -> {
+            if (followingCountText != null) {
+                followingCountText.setText(String.valueOf(count));
             }
-        }, e -> Log.e(TAG, "Error fetching participant data", e));
+        }, e -> Log.e(TAG, "Error fetching following count", e));
     }
 
     /**
      * Update UI with participant data
      */
     private void updateUI(Participant participant) {
-        // Update follower and following counts
-        if (followersCountText != null) {
-            followersCountText.setText(String.valueOf(participant.getFollowerCount()));
-        }
-        if (followingCountText != null) {
-            followingCountText.setText(String.valueOf(participant.getFollowingCount()));
-        }
+        this.participant = participant;
+        loadFollowCounts();
 
         // Set profile picture if available
-        if (participant.getProfilePicture() != null && profileImageView != null) {
-            Bitmap bitmap = ImageHandler.base64ToBitmap(participant.getProfilePicture());
-            if (bitmap != null) {
-                profileImageView.setImageBitmap(bitmap);
-            } else {
-                profileImageView.setImageResource(R.drawable.ic_baseline_profile_24);
-            }
+        if (profileImageView != null) {
+            ImageLoader.getInstance(profileImageView.getContext()).loadProfilePicture(participant, profileImageView, R.drawable.ic_baseline_profile_24);
         }
     }
 
@@ -437,8 +426,8 @@ public class ProfileFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        // Refresh data when returning to this fragment
-        fetchParticipantData();
+        // Refresh data when returning to this fragment; participant data is kept current by its listener
+        loadFollowCounts();
         loadFollowRequests();
         loadRecentMoodEvent();
     }
@@ -4,7 +4,6 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -18,8 +17,9 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import com.example.bread.R;
 import com.example.bread.model.Participant;
+import com.example.bread.repository.MoodEventRepository;
 import com.example.bread.repository.ParticipantRepository;
-import com.example.bread.utils.ImageHandler;
+import com.example.bread.utils.ImageLoader;
 import com.example.bread.view.LoginPage;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
@@ -81,6 +81,10 @@ public class SettingsFragment extends Fragment {
             SharedPreferences preferences = getActivity().getSharedPreferences("sharedPrefs", Context.MODE_PRIVATE);
             preferences.edit().clear().apply();
 
+            // Stop listening to the signed out user's feed and relationships
+            MoodEventRepository.stopLiveHomeFeed();
+            ParticipantRepository.stopFollowGraph();
+
             // Sign out from Firebase
             FirebaseAuth.getInstance().signOut();
 
@@ -100,11 +104,8 @@ public class SettingsFragment extends Fragment {
         if (currentUsername == null) return;
 
         participantRepository.fetchBaseParticipant(currentUsername, participant -> {
-            if (participant != null && participant.getProfilePicture() != null) {
-                Bitmap bitmap = ImageHandler.base64ToBitmap(participant.getProfilePicture());
-                if (bitmap != null && profileChangeButton != null) {
-                    profileChangeButton.setImageBitmap(bitmap);
-                }
+            if (participant != null && profileChangeButton != null) {
+                ImageLoader.getInstance(profileChangeButton.getContext()).loadProfilePicture(participant, profileChangeButton, R.drawable.default_avatar);
             }
         }, e -> Log.e(TAG, "Error loading profile picture", e));
     }
@@ -158,6 +159,7 @@ public class SettingsFragment extends Fragment {
                     .addOnSuccessListener(new OnSuccessListener<Void>() {
                         @Override
                         public void onSuccess(Void aVoid) {
+                            userRepo.invalidateCachedParticipant(username);
                             Log.d(TAG, "DocumentSnapshot successfully updated!");
                         }
                     })
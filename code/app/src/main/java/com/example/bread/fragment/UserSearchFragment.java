@@ -21,12 +21,13 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.bread.R;
 import com.example.bread.controller.UserAdapter;
 import com.example.bread.model.Participant;
+import com.example.bread.repository.FollowGraph;
 import com.example.bread.repository.ParticipantRepository;
+import com.example.bread.repository.UserSearch;
 import com.google.firebase.auth.FirebaseAuth;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class UserSearchFragment extends Fragment implements UserAdapter.UserInteractionListener {
 
@@ -41,12 +42,17 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
     private ParticipantRepository participantRepository;
     private String currentUsername;
     private List<Participant> userList = new ArrayList<>();
-    private AtomicBoolean isSearching = new AtomicBoolean(false);
+    // Debounces searches and drops the results of superseded ones
+    private UserSearch userSearch;
+    private FollowGraph followGraph;
+    // Rebinds the follow buttons when a relationship changes
+    private final FollowGraph.Observer followGraphObserver = () -> userAdapter.notifyDataSetChanged();
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         participantRepository = new ParticipantRepository();
+        userSearch = new UserSearch(participantRepository);
 
         // Get current username
         if (FirebaseAuth.getInstance().getCurrentUser() != null) {
@@ -69,6 +75,10 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
         userAdapter = new UserAdapter(userList, this);
         userRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         userRecyclerView.setAdapter(userAdapter);
+        if (currentUsername != null) {
+            followGraph = participantRepository.getFollowGraph(currentUsername);
+            followGraph.addObserver(followGraphObserver);
+        }
 
         // Set up search text watcher
         searchEditText.addTextChangedListener(new TextWatcher() {
@@ -84,9 +94,11 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
                 if (query.length() >= 2) {
                     searchUsers(query);
                 } else {
-                    // Clear results when search is cleared
+                    // Cancel any pending search and clear results when search is cleared
+                    userSearch.cancel();
                     userList.clear();
                     userAdapter.notifyDataSetChanged();
+                    progressBar.setVisibility(View.GONE);
                     emptyView.setVisibility(View.GONE);
                     userRecyclerView.setVisibility(View.GONE);
                 }
@@ -97,15 +109,11 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
     }
 
     private void searchUsers(String query) {
-        if (isSearching.get()) {
-            return; // Prevent multiple concurrent searches
-        }
-
-        isSearching.set(true);
         progressBar.setVisibility(View.VISIBLE);
         emptyView.setVisibility(View.GONE);
 
-        participantRepository.searchUsersByUsername(query, participants -> {
+        // Starting a search cancels the previous one, so only the results of the latest query arrive
+        userSearch.search(query, participants -> {
             userList.clear();
 
             // Filter out the current user from results
@@ -118,12 +126,10 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
             userAdapter.notifyDataSetChanged();
             updateEmptyView();
             progressBar.setVisibility(View.GONE);
-            isSearching.set(false);
         }, e -> {
             Log.e(TAG, "Error searching users", e);
             Toast.makeText(getContext(), "Error searching users", Toast.LENGTH_SHORT).show();
             progressBar.setVisibility(View.GONE);
-            isSearching.set(false);
             updateEmptyView();
         });
     }
@@ -142,35 +148,27 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
     public void onFollowClick(Participant participant) {
         progressBar.setVisibility(View.VISIBLE);
 
-        // First check if already following
-        participantRepository.isFollowing(currentUsername, participant.getUsername(), isFollowing -> {
-            if (isFollowing) {
+        // Answered from the follow graph once it has loaded
+        participantRepository.fetchRelationship(currentUsername, participant.getUsername(), relationship -> {
+            if (relationship == FollowGraph.Relationship.FOLLOWING) {
                 Toast.makeText(getContext(), "You are already following this user", Toast.LENGTH_SHORT).show();
                 progressBar.setVisibility(View.GONE);
                 return;
             }
+            if (relationship == FollowGraph.Relationship.REQUESTED) {
+                Toast.makeText(getContext(), "Follow request already sent", Toast.LENGTH_SHORT).show();
+                progressBar.setVisibility(View.GONE);
+                return;
+            }
 
-            // Then check if a follow request already exists
-            participantRepository.checkFollowRequestExists(currentUsername, participant.getUsername(), requestExists -> {
-                if (requestExists) {
-                    Toast.makeText(getContext(), "Follow request already sent", Toast.LENGTH_SHORT).show();
-                    progressBar.setVisibility(View.GONE);
-                    return;
-                }
-
-                // Send follow request
-                participantRepository.sendFollowRequest(currentUsername, participant.getUsername(), unused -> {
-                    Toast.makeText(getContext(), "Follow request sent", Toast.LENGTH_SHORT).show();
-                    updateFollowButtonState(participant.getUsername());
-                    progressBar.setVisibility(View.GONE);
-                }, e -> {
-                    Log.e(TAG, "Error sending follow request", e);
-                    Toast.makeText(getContext(), "Error sending follow request", Toast.LENGTH_SHORT).show();
-                    progressBar.setVisibility(View.GONE);
-                });
+            // Send follow request
+            participantRepository.sendFollowRequest(currentUsername, participant.getUsername(), unused -> {
+                Toast.makeText(getContext(), "Follow request sent", Toast.LENGTH_SHORT).show();
+                updateFollowButtonState(participant.getUsername());
+                progressBar.setVisibility(View.GONE);
             }, e -> {
-                Log.e(TAG, "Error checking follow request", e);
-                Toast.makeText(getContext(), "Error checking follow status", Toast.LENGTH_SHORT).show();
+                Log.e(TAG, "Error sending follow request", e);
+                Toast.makeText(getContext(), "Error sending follow request", Toast.LENGTH_SHORT).show();
                 progressBar.setVisibility(View.GONE);
             });
         }, e -> {
@@ -189,6 +187,15 @@ public class UserSearchFragment extends Fragment implements UserAdapter.UserInte
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (followGraph != null) {
+            followGraph.removeObserver(followGraphObserver);
+        }
+        userSearch.cancel();
+    }
+
     @Override
     public void onPause() {
         super.onPause();
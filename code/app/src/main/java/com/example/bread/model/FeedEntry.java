@@ -0,0 +1,122 @@
+package com.example.bread.model;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.ServerTimestamp;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Represents a lightweight entry in a participant's home feed inbox. An entry is written into
+ * the inbox of every follower when a mood event is created or updated, and only points back to
+ * the mood event so that the feed can be read with a single ordered query.
+ */
+public class FeedEntry implements Serializable {
+    private String eventId;
+    private DocumentReference eventRef;
+    private DocumentReference participantRef;
+    @ServerTimestamp
+    private Date timestamp;
+
+    /**
+     * Default constructor for Firestore serialization
+     */
+    public FeedEntry() {
+    }
+
+    /**
+     * Constructs a feed entry for the given mood event
+     *
+     * @param moodEvent the mood event the entry points to
+     * @param eventRef  the reference to the mood event document
+     */
+    public FeedEntry(@NonNull MoodEvent moodEvent, @NonNull DocumentReference eventRef) {
+        this.eventId = moodEvent.getId();
+        this.eventRef = eventRef;
+        this.participantRef = moodEvent.getParticipantRef();
+        this.timestamp = moodEvent.getTimestamp();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "FeedEntry{" +
+                "eventId=" + eventId +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+
+    /**
+     * Returns the id of the mood event this entry points to
+     *
+     * @return the mood event id
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Sets the id of the mood event this entry points to
+     *
+     * @param eventId the mood event id
+     */
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    /**
+     * Returns the reference to the mood event document
+     *
+     * @return the mood event reference
+     */
+    public DocumentReference getEventRef() {
+        return eventRef;
+    }
+
+    /**
+     * Sets the reference to the mood event document
+     *
+     * @param eventRef the mood event reference
+     */
+    public void setEventRef(DocumentReference eventRef) {
+        this.eventRef = eventRef;
+    }
+
+    /**
+     * Returns the reference to the participant who created the mood event
+     *
+     * @return the author's participant reference
+     */
+    public DocumentReference getParticipantRef() {
+        return participantRef;
+    }
+
+    /**
+     * Sets the reference to the participant who created the mood event
+     *
+     * @param participantRef the author's participant reference
+     */
+    public void setParticipantRef(DocumentReference participantRef) {
+        this.participantRef = participantRef;
+    }
+
+    /**
+     * Returns the timestamp of the mood event, used to order the feed
+     *
+     * @return the timestamp of the mood event
+     */
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Sets the timestamp of the mood event
+     *
+     * @param timestamp the timestamp of the mood event
+     */
+    public void setTimestamp(Date timestamp) {
+        this.timestamp = timestamp;
+    }
+}
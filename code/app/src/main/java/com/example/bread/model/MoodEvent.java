@@ -8,6 +8,7 @@ import androidx.annotation.Nullable;
 import com.firebase.geofire.GeoFireUtils;
 import com.firebase.geofire.GeoLocation;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.ServerTimestamp;
 
 import java.io.Serializable;
@@ -111,6 +112,9 @@ public class MoodEvent implements Serializable, Comparable<MoodEvent> {
     private EmotionalState emotionalState;
     private SocialSituation socialSituation;
     private String attachedImage;
+    private String attachedImageHash;
+    private String attachedImageListHash;
+    private String attachedImageBlurHash;
     private String trigger;
 
 
@@ -298,6 +302,70 @@ public class MoodEvent implements Serializable, Comparable<MoodEvent> {
         this.attachedImage = attachedImage;
     }
 
+    /**
+     * Returns the content hash of the attached image, which is stored in the images collection.
+     *
+     * @return the hash of the attached image, or null if the mood event has none.
+     */
+    public String getAttachedImageHash() {
+        return attachedImageHash;
+    }
+
+    /**
+     * Sets the content hash of the attached image.
+     *
+     * @param attachedImageHash the hash of the attached image.
+     */
+    public void setAttachedImageHash(String attachedImageHash) {
+        this.attachedImageHash = attachedImageHash;
+    }
+
+    /**
+     * Returns the content hash of the list-size version of the attached image, shown in feed rows.
+     *
+     * @return the hash of the list-size image, or null if the full image is small enough for lists.
+     */
+    public String getAttachedImageListHash() {
+        return attachedImageListHash;
+    }
+
+    /**
+     * Sets the content hash of the list-size version of the attached image.
+     *
+     * @param attachedImageListHash the hash of the list-size image.
+     */
+    public void setAttachedImageListHash(String attachedImageListHash) {
+        this.attachedImageListHash = attachedImageListHash;
+    }
+
+    /**
+     * Returns the BlurHash of the attached image, shown until any version of the image is loaded.
+     *
+     * @return the BlurHash of the attached image.
+     */
+    public String getAttachedImageBlurHash() {
+        return attachedImageBlurHash;
+    }
+
+    /**
+     * Sets the BlurHash of the attached image.
+     *
+     * @param attachedImageBlurHash the BlurHash of the attached image.
+     */
+    public void setAttachedImageBlurHash(String attachedImageBlurHash) {
+        this.attachedImageBlurHash = attachedImageBlurHash;
+    }
+
+    /**
+     * Returns whether this mood event has an attached image, stored inline or in the images collection.
+     *
+     * @return true if the mood event has an attached image.
+     */
+    @Exclude
+    public boolean hasAttachedImage() {
+        return (attachedImage != null && !attachedImage.isEmpty()) || attachedImageHash != null;
+    }
+
     /**
      * Returns the geographical information for this mood event.
      *
@@ -21,6 +21,8 @@ public class Participant implements Serializable {
     private String firstName;
     private String lastName;
     private String profilePicture;
+    private String profilePictureHash;
+    private String profilePictureThumbnail;
     private int followerCount;
     private int followingCount;
 
@@ -212,6 +214,42 @@ public class Participant implements Serializable {
         this.profilePicture = profilePicture;
     }
 
+    /**
+     * Gets the content hash of the participant's profile picture, which is stored in the images collection.
+     *
+     * @return the hash of the profile picture, or null if the participant has none.
+     */
+    public String getProfilePictureHash() {
+        return profilePictureHash;
+    }
+
+    /**
+     * Sets the content hash of the participant's profile picture.
+     *
+     * @param profilePictureHash the hash of the profile picture.
+     */
+    public void setProfilePictureHash(String profilePictureHash) {
+        this.profilePictureHash = profilePictureHash;
+    }
+
+    /**
+     * Gets the tiny base64 thumbnail of the participant's profile picture.
+     *
+     * @return the thumbnail as a base64 String.
+     */
+    public String getProfilePictureThumbnail() {
+        return profilePictureThumbnail;
+    }
+
+    /**
+     * Sets the tiny base64 thumbnail of the participant's profile picture.
+     *
+     * @param profilePictureThumbnail the thumbnail as a base64 String.
+     */
+    public void setProfilePictureThumbnail(String profilePictureThumbnail) {
+        this.profilePictureThumbnail = profilePictureThumbnail;
+    }
+
     /**
      * Gets the list of follow requests for this participant.
      * This field is excluded from Firestore storage.
@@ -242,9 +280,10 @@ public class Participant implements Serializable {
     }
 
     /**
-     * Gets the follower count.
+     * Gets the follower count stored on the participant document, which is no longer updated now that
+     * follower counts are sharded. Use ParticipantRepository#fetchFollowerCount for the current count.
      *
-     * @return Number of followers.
+     * @return Number of followers before counts were sharded.
      */
     public int getFollowerCount() {
         return followerCount;
@@ -260,9 +299,10 @@ public class Participant implements Serializable {
     }
 
     /**
-     * Gets the following count.
+     * Gets the following count stored on the participant document, which is no longer updated now that
+     * following counts are sharded. Use ParticipantRepository#fetchFollowingCount for the current count.
      *
-     * @return Number of users being followed.
+     * @return Number of users being followed before counts were sharded.
      */
     public int getFollowingCount() {
         return followingCount;
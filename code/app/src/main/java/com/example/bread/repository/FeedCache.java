@@ -0,0 +1,243 @@
+package com.example.bread.repository;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.bread.model.MoodEvent;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A singleton on-device store of the home feed, backed by SQLite. The feed is written through on
+ * every fetch so that it can be shown instantly on the next launch while it is revalidated from
+ * Firestore. Entries expire after {@link #TTL_MS} and each participant's feed is capped at
+ * {@link #MAX_EVENTS_PER_FEED} mood events, evicting the oldest ones.
+ */
+public class FeedCache {
+    private static final String TAG = "FeedCache";
+    private static final String DATABASE_NAME = "feed_cache.db";
+    private static final int DATABASE_VERSION = 3;
+    private static final String TABLE = "feed_events";
+    public static final long TTL_MS = 24 * 60 * 60 * 1000;
+    public static final int MAX_EVENTS_PER_FEED = 200;
+    private static FeedCache instance;
+
+    private final SQLiteOpenHelper helper;
+    // All database work runs in order on a single background thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private FeedCache(Context context) {
+        helper = new SQLiteOpenHelper(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE " + TABLE + " (" +
+                        "owner TEXT NOT NULL, " +
+                        "id TEXT NOT NULL, " +
+                        "participant_path TEXT, " +
+                        "title TEXT, " +
+                        "reason TEXT, " +
+                        "trigger_text TEXT, " +
+                        "emotional_state TEXT, " +
+                        "social_situation TEXT, " +
+                        "attached_image TEXT, " +
+                        "attached_image_hash TEXT, " +
+                        "attached_image_list_hash TEXT, " +
+                        "attached_image_blur_hash TEXT, " +
+                        "geohash TEXT, " +
+                        "latitude REAL, " +
+                        "longitude REAL, " +
+                        "timestamp INTEGER, " +
+                        "cached_at INTEGER NOT NULL, " +
+                        "PRIMARY KEY (owner, id))");
+                db.execSQL("CREATE INDEX idx_feed_owner_timestamp ON " + TABLE + " (owner, timestamp DESC)");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                // The cache can always be rebuilt from Firestore
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+                onCreate(db);
+            }
+        };
+    }
+
+    public static synchronized FeedCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new FeedCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the cached feed of a participant, dropping expired entries. The listener is called on
+     * the main thread.
+     *
+     * @param owner             The username of the participant whose feed is read
+     * @param db                The Firestore instance used to rebuild participant references
+     * @param onSuccessListener The listener to be called with the cached feed, newest first
+     */
+    public void read(@NonNull String owner, @NonNull FirebaseFirestore db, @NonNull OnSuccessListener<List<MoodEvent>> onSuccessListener) {
+        executor.execute(() -> {
+            List<MoodEvent> events = new ArrayList<>();
+            try {
+                SQLiteDatabase database = helper.getWritableDatabase();
+                database.delete(TABLE, "cached_at < ?", new String[]{String.valueOf(System.currentTimeMillis() - TTL_MS)});
+                try (Cursor cursor = database.query(TABLE, null, "owner = ?", new String[]{owner},
+                        null, null, "timestamp DESC", String.valueOf(MAX_EVENTS_PER_FEED))) {
+                    while (cursor.moveToNext()) {
+                        events.add(fromCursor(cursor, db));
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to read the cached feed of " + owner, e);
+            }
+            mainHandler.post(() -> onSuccessListener.onSuccess(events));
+        });
+    }
+
+    /**
+     * Writes mood events into the cached feed of a participant, replacing existing copies, and
+     * evicts the oldest mood events beyond {@link #MAX_EVENTS_PER_FEED}
+     *
+     * @param owner  The username of the participant whose feed is written
+     * @param events The mood events to write
+     */
+    public void putAll(@NonNull String owner, @NonNull List<MoodEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<MoodEvent> copy = new ArrayList<>(events);
+        executor.execute(() -> {
+            try {
+                SQLiteDatabase database = helper.getWritableDatabase();
+                database.beginTransaction();
+                try {
+                    long now = System.currentTimeMillis();
+                    for (MoodEvent event : copy) {
+                        database.insertWithOnConflict(TABLE, null, toValues(owner, event, now), SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                    database.execSQL("DELETE FROM " + TABLE + " WHERE owner = ? AND id NOT IN (" +
+                                    "SELECT id FROM " + TABLE + " WHERE owner = ? ORDER BY timestamp DESC LIMIT " + MAX_EVENTS_PER_FEED + ")",
+                            new Object[]{owner, owner});
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to write the cached feed of " + owner, e);
+            }
+        });
+    }
+
+    /**
+     * Replaces the cached feed of a participant with the given mood events
+     *
+     * @param owner  The username of the participant whose feed is written
+     * @param events The mood events of the feed
+     */
+    public void replaceAll(@NonNull String owner, @NonNull List<MoodEvent> events) {
+        executor.execute(() -> {
+            try {
+                helper.getWritableDatabase().delete(TABLE, "owner = ?", new String[]{owner});
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to clear the cached feed of " + owner, e);
+            }
+        });
+        putAll(owner, events);
+    }
+
+    /**
+     * Removes a mood event from the cached feed of a participant
+     *
+     * @param owner   The username of the participant whose feed is written
+     * @param eventId The id of the mood event to remove
+     */
+    public void remove(@NonNull String owner, @NonNull String eventId) {
+        executor.execute(() -> {
+            try {
+                helper.getWritableDatabase().delete(TABLE, "owner = ? AND id = ?", new String[]{owner, eventId});
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to remove " + eventId + " from the cached feed of " + owner, e);
+            }
+        });
+    }
+
+    private static ContentValues toValues(String owner, MoodEvent event, long cachedAt) {
+        ContentValues values = new ContentValues();
+        values.put("owner", owner);
+        values.put("id", event.getId());
+        values.put("participant_path", event.getParticipantRef() != null ? event.getParticipantRef().getPath() : null);
+        values.put("title", event.getTitle());
+        values.put("reason", event.getReason());
+        values.put("trigger_text", event.getTrigger());
+        values.put("emotional_state", event.getEmotionalState() != null ? event.getEmotionalState().name() : null);
+        values.put("social_situation", event.getSocialSituation() != null ? event.getSocialSituation().name() : null);
+        values.put("attached_image", event.getAttachedImage());
+        values.put("attached_image_hash", event.getAttachedImageHash());
+        values.put("attached_image_list_hash", event.getAttachedImageListHash());
+        values.put("attached_image_blur_hash", event.getAttachedImageBlurHash());
+        Map<String, Object> geoInfo = event.getGeoInfo();
+        if (geoInfo != null && geoInfo.get("latitude") instanceof Number && geoInfo.get("longitude") instanceof Number) {
+            values.put("geohash", (String) geoInfo.get("geohash"));
+            values.put("latitude", ((Number) geoInfo.get("latitude")).doubleValue());
+            values.put("longitude", ((Number) geoInfo.get("longitude")).doubleValue());
+        }
+        values.put("timestamp", event.getTimestamp() != null ? event.getTimestamp().getTime() : null);
+        values.put("cached_at", cachedAt);
+        return values;
+    }
+
+    private static MoodEvent fromCursor(Cursor cursor, FirebaseFirestore db) {
+        MoodEvent event = new MoodEvent();
+        event.setId(cursor.getString(cursor.getColumnIndexOrThrow("id")));
+        String participantPath = cursor.getString(cursor.getColumnIndexOrThrow("participant_path"));
+        if (participantPath != null) {
+            event.setParticipantRef(db.document(participantPath));
+        }
+        event.setTitle(cursor.getString(cursor.getColumnIndexOrThrow("title")));
+        event.setReason(cursor.getString(cursor.getColumnIndexOrThrow("reason")));
+        event.setTrigger(cursor.getString(cursor.getColumnIndexOrThrow("trigger_text")));
+        String emotionalState = cursor.getString(cursor.getColumnIndexOrThrow("emotional_state"));
+        if (emotionalState != null) {
+            event.setEmotionalState(MoodEvent.EmotionalState.valueOf(emotionalState));
+        }
+        String socialSituation = cursor.getString(cursor.getColumnIndexOrThrow("social_situation"));
+        if (socialSituation != null) {
+            event.setSocialSituation(MoodEvent.SocialSituation.valueOf(socialSituation));
+        }
+        event.setAttachedImage(cursor.getString(cursor.getColumnIndexOrThrow("attached_image")));
+        event.setAttachedImageHash(cursor.getString(cursor.getColumnIndexOrThrow("attached_image_hash")));
+        event.setAttachedImageListHash(cursor.getString(cursor.getColumnIndexOrThrow("attached_image_list_hash")));
+        event.setAttachedImageBlurHash(cursor.getString(cursor.getColumnIndexOrThrow("attached_image_blur_hash")));
+        int latitudeIndex = cursor.getColumnIndexOrThrow("latitude");
+        if (!cursor.isNull(latitudeIndex)) {
+            Map<String, Object> geoInfo = new HashMap<>();
+            geoInfo.put("geohash", cursor.getString(cursor.getColumnIndexOrThrow("geohash")));
+            geoInfo.put("latitude", cursor.getDouble(latitudeIndex));
+            geoInfo.put("longitude", cursor.getDouble(cursor.getColumnIndexOrThrow("longitude")));
+            event.setGeoInfo(geoInfo);
+        }
+        int timestampIndex = cursor.getColumnIndexOrThrow("timestamp");
+        if (!cursor.isNull(timestampIndex)) {
+            event.setTimestamp(new Date(cursor.getLong(timestampIndex)));
+        }
+        return event;
+    }
+}
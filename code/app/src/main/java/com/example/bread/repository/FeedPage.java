@@ -0,0 +1,65 @@
+package com.example.bread.repository;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bread.model.MoodEvent;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A page of the home feed returned by {@link MoodEventRepository#fetchHomeFeedPage}.
+ * Pass the previous page back to the repository to fetch the page after it.
+ */
+public class FeedPage {
+    private final List<MoodEvent> events;
+    private final boolean hasMore;
+
+    // Cursor state, only used by the repository to continue after this page
+    final Set<String> following;
+    // The followed participants whose events are pulled, looked up once per feed session
+    final Set<String> largeAccounts;
+    @Nullable
+    final DocumentSnapshot lastEntry;
+    @Nullable
+    final Date oldestTimestamp;
+
+    FeedPage(@NonNull List<MoodEvent> events, boolean hasMore, @NonNull Set<String> following, @NonNull Set<String> largeAccounts,
+             @Nullable DocumentSnapshot lastEntry, @Nullable Date oldestTimestamp) {
+        this.events = events;
+        this.hasMore = hasMore;
+        this.following = following;
+        this.largeAccounts = largeAccounts;
+        this.lastEntry = lastEntry;
+        this.oldestTimestamp = oldestTimestamp;
+    }
+
+    /**
+     * Returns a last page with the given events and no cursor
+     */
+    static FeedPage last(@NonNull List<MoodEvent> events) {
+        return new FeedPage(events, false, Collections.emptySet(), Collections.emptySet(), null, null);
+    }
+
+    /**
+     * Returns the mood events of this page, newest first
+     *
+     * @return the mood events of this page
+     */
+    public List<MoodEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns whether there may be more mood events after this page
+     *
+     * @return true if another page can be fetched
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.bread.repository;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A local mirror of the follow relationships of the signed-in participant: who they follow, who
+ * follows them, and their pending outgoing and incoming follow requests. The mirror is kept up to date
+ * by snapshot listeners, so the relationship with any participant is a lookup in memory instead of
+ * reads. The listeners also deliver the participant's own writes immediately. The mirror only counts
+ * as loaded once every set was confirmed by the server, since a snapshot from the offline cache may be
+ * incomplete.
+ */
+public class FollowGraph {
+    private static final String TAG = "FollowGraph";
+    private static final int LISTENER_COUNT = 4;
+
+    /**
+     * The relationship of the signed-in participant with another participant
+     */
+    public enum Relationship {
+        NONE,
+        REQUESTED,
+        FOLLOWING
+    }
+
+    /**
+     * Observer of the changes to a follow graph, called on the main thread
+     */
+    public interface Observer {
+        /**
+         * Called when the follow graph has loaded or any of its relationships changed
+         */
+        void onFollowGraphChanged();
+    }
+
+    private final ParticipantRepository participantRepository;
+    private final String username;
+    private final Set<String> following = new HashSet<>();
+    private final Set<String> followers = new HashSet<>();
+    private final Set<String> outgoingRequests = new HashSet<>();
+    private final Set<String> incomingRequests = new HashSet<>();
+    private final Set<Observer> observers = new LinkedHashSet<>();
+    private final List<ListenerRegistration> registrations = new ArrayList<>();
+    // The sets whose first snapshot from the server arrived, compared by identity
+    private final Set<Set<String>> loadedSets = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    FollowGraph(@NonNull ParticipantRepository participantRepository, @NonNull String username) {
+        this.participantRepository = participantRepository;
+        this.username = username;
+    }
+
+    /**
+     * Returns the username of the participant whose relationships these are
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns whether every relationship has loaded, so that lookups are exact
+     *
+     * @return true if the follow graph has loaded
+     */
+    public synchronized boolean isLoaded() {
+        return loadedSets.size() == LISTENER_COUNT;
+    }
+
+    /**
+     * Returns the relationship of the participant with another participant
+     *
+     * @param targetUsername the username of the other participant
+     * @return FOLLOWING if the participant follows them, REQUESTED if a follow request to them is
+     * pending, NONE otherwise
+     */
+    public synchronized Relationship getRelationship(@NonNull String targetUsername) {
+        if (following.contains(targetUsername)) {
+            return Relationship.FOLLOWING;
+        }
+        return outgoingRequests.contains(targetUsername) ? Relationship.REQUESTED : Relationship.NONE;
+    }
+
+    /**
+     * Returns whether the participant follows another participant
+     */
+    public synchronized boolean isFollowing(@NonNull String targetUsername) {
+        return following.contains(targetUsername);
+    }
+
+    /**
+     * Returns whether another participant follows the participant
+     */
+    public synchronized boolean isFollowedBy(@NonNull String followerUsername) {
+        return followers.contains(followerUsername);
+    }
+
+    /**
+     * Returns whether another participant has a pending follow request to the participant
+     */
+    public synchronized boolean hasRequestFrom(@NonNull String requestorUsername) {
+        return incomingRequests.contains(requestorUsername);
+    }
+
+    /**
+     * Returns a copy of the usernames the participant follows
+     */
+    public synchronized Set<String> getFollowing() {
+        return new HashSet<>(following);
+    }
+
+    /**
+     * Returns a copy of the usernames the participant has a pending follow request to
+     */
+    public synchronized Set<String> getRequested() {
+        return new HashSet<>(outgoingRequests);
+    }
+
+    /**
+     * Adds an observer
+     *
+     * @param observer the observer to add
+     */
+    public synchronized void addObserver(@NonNull Observer observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Removes an observer
+     *
+     * @param observer the observer to remove
+     */
+    public synchronized void removeObserver(@NonNull Observer observer) {
+        observers.remove(observer);
+    }
+
+    void start() {
+        listen(participantRepository.getParticipantRef(username).collection("following"), following, DocumentSnapshot::getId, doc -> true);
+        listen(participantRepository.getParticipantRef(username).collection("followers"), followers, DocumentSnapshot::getId, doc -> true);
+        // Requests are kept once accepted, so only pending ones count
+        listen(participantRepository.getParticipantRef(username).collection("followRequests"), incomingRequests, DocumentSnapshot::getId, FollowGraph::isPending);
+        // A request sent by the participant is stored under the participant it was sent to
+        listen(participantRepository.getOutgoingFollowRequestsQuery(username), outgoingRequests, doc ->
+                doc.getReference().getParent().getParent().getId(), FollowGraph::isPending);
+    }
+
+    private static boolean isPending(@NonNull DocumentSnapshot doc) {
+        return "pending".equals(doc.getString("status"));
+    }
+
+    /**
+     * Stops listening. The follow graph is not used afterwards.
+     */
+    synchronized void stop() {
+        for (ListenerRegistration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        observers.clear();
+    }
+
+    /**
+     * Mirrors a query into a set, applying only the changed documents of each snapshot
+     *
+     * @param query    the query to listen to
+     * @param set      the set to mirror it into
+     * @param toMember the member of the set a document stands for
+     * @param isMember whether a document currently counts as a member
+     */
+    private synchronized void listen(@NonNull Query query, @NonNull Set<String> set, @NonNull Function<DocumentSnapshot, String> toMember, @NonNull Predicate<DocumentSnapshot> isMember) {
+        // Metadata changes are included so that the server confirming cached data marks the set loaded
+        registrations.add(query.addSnapshotListener(MetadataChanges.INCLUDE, (snapshot, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error listening to the follow graph of " + username, e);
+                return;
+            }
+            if (snapshot != null) {
+                onSnapshot(snapshot, set, toMember, isMember);
+            }
+        }));
+    }
+
+    private void onSnapshot(@NonNull QuerySnapshot snapshot, @NonNull Set<String> set, @NonNull Function<DocumentSnapshot, String> toMember, @NonNull Predicate<DocumentSnapshot> isMember) {
+        List<Observer> toNotify;
+        synchronized (this) {
+            boolean changed = !snapshot.getMetadata().isFromCache() && loadedSets.add(set);
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                DocumentSnapshot doc = change.getDocument();
+                if (change.getType() != DocumentChange.Type.REMOVED && isMember.test(doc)) {
+                    changed |= set.add(toMember.apply(doc));
+                } else {
+                    // Removed, or no longer a member, such as a request that was accepted
+                    changed |= set.remove(toMember.apply(doc));
+                }
+            }
+            if (!changed) {
+                return;
+            }
+            toNotify = new ArrayList<>(observers);
+        }
+        for (Observer observer : toNotify) {
+            observer.onFollowGraphChanged();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.bread.repository;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.bread.utils.FollowSuggestionIndex;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Follow suggestions for the signed-in participant: the participants followed by the most participants
+ * they follow. The following lists of the followed participants are read once into a
+ * {@link FollowSuggestionIndex}, which is then updated from the {@link FollowGraph} as the participant
+ * follows and unfollows, and read again after {@link #TTL_MS}. The reads are scheduled at
+ * {@link QueryScheduler.Priority#PREFETCH}, so they do not hold up the queries of the visible page.
+ * All methods are called on the main thread.
+ */
+public class FollowSuggestions implements FollowGraph.Observer {
+    private static final String TAG = "FollowSuggestions";
+    public static final long TTL_MS = 10 * 60 * 1000;
+    // Following lists read at most, so that following thousands of participants stays bounded
+    public static final int MAX_SOURCES = 200;
+
+    private static class Request {
+        final int limit;
+        final OnSuccessListener<List<FollowSuggestionIndex.Suggestion>> onSuccessListener;
+        final OnFailureListener onFailureListener;
+
+        Request(int limit, OnSuccessListener<List<FollowSuggestionIndex.Suggestion>> onSuccessListener, OnFailureListener onFailureListener) {
+            this.limit = limit;
+            this.onSuccessListener = onSuccessListener;
+            this.onFailureListener = onFailureListener;
+        }
+    }
+
+    private final ParticipantRepository participantRepository;
+    private final FollowGraph followGraph;
+    private final QueryScheduler queryScheduler = QueryScheduler.getInstance();
+    private final List<Request> waiting = new ArrayList<>();
+    // Newly followed participants whose following lists are being read
+    private final Set<String> pendingSources = new HashSet<>();
+    private FollowSuggestionIndex index;
+    private long loadedAt;
+    private boolean loading = false;
+
+    FollowSuggestions(@NonNull ParticipantRepository participantRepository, @NonNull FollowGraph followGraph) {
+        this.participantRepository = participantRepository;
+        this.followGraph = followGraph;
+        followGraph.addObserver(this);
+    }
+
+    FollowGraph getFollowGraph() {
+        return followGraph;
+    }
+
+    /**
+     * Fetches the best suggestions, reading the following lists again if they are older than
+     * {@link #TTL_MS}
+     *
+     * @param limit             the maximum number of suggestions
+     * @param onSuccessListener the listener to be called with the suggestions, most mutual connections first
+     * @param onFailureListener the listener to be called when the following lists cannot be read
+     */
+    public void fetch(int limit, @NonNull OnSuccessListener<List<FollowSuggestionIndex.Suggestion>> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        if (index != null && SystemClock.elapsedRealtime() - loadedAt <= TTL_MS) {
+            onSuccessListener.onSuccess(top(limit));
+            return;
+        }
+        waiting.add(new Request(limit, onSuccessListener, onFailureListener));
+        if (loading) {
+            return;
+        }
+        loading = true;
+        if (followGraph.isLoaded()) {
+            load(followGraph.getFollowing());
+        } else {
+            participantRepository.fetchFollowing(followGraph.getUsername(), this::load, this::fail);
+        }
+    }
+
+    private List<FollowSuggestionIndex.Suggestion> top(int limit) {
+        // Participants followed beyond MAX_SOURCES are not in the index, so exclude by the graph
+        Set<String> exclude = followGraph.getFollowing();
+        exclude.addAll(followGraph.getRequested());
+        return index.top(limit, exclude);
+    }
+
+    private void load(@NonNull Collection<String> following) {
+        List<String> sources = new ArrayList<>(following);
+        if (sources.size() > MAX_SOURCES) {
+            sources = sources.subList(0, MAX_SOURCES);
+        }
+        List<String> finalSources = sources;
+        List<Task<List<String>>> tasks = new ArrayList<>();
+        for (String source : sources) {
+            tasks.add(queryScheduler.schedule(QueryScheduler.Priority.PREFETCH, () -> participantRepository.fetchFollowUsernames(source, "following")));
+        }
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(done -> {
+            FollowSuggestionIndex newIndex = new FollowSuggestionIndex(followGraph.getUsername());
+            int failed = 0;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tasks.get(i).isSuccessful()) {
+                    newIndex.addFollowed(finalSources.get(i), tasks.get(i).getResult());
+                } else {
+                    failed++;
+                }
+            }
+            if (failed > 0) {
+                Log.w(TAG, "Failed to read the following of " + failed + " of " + tasks.size() + " participants");
+            }
+            index = newIndex;
+            loadedAt = SystemClock.elapsedRealtime();
+            loading = false;
+            pendingSources.clear();
+            List<Request> requests = new ArrayList<>(waiting);
+            waiting.clear();
+            for (Request request : requests) {
+                request.onSuccessListener.onSuccess(top(request.limit));
+            }
+        });
+    }
+
+    private void fail(@NonNull Exception e) {
+        loading = false;
+        List<Request> requests = new ArrayList<>(waiting);
+        waiting.clear();
+        for (Request request : requests) {
+            request.onFailureListener.onFailure(e);
+        }
+    }
+
+    /**
+     * Applies follows and unfollows to the index, reading only the following lists of newly followed
+     * participants
+     */
+    @Override
+    public void onFollowGraphChanged() {
+        if (index == null || loading || !followGraph.isLoaded()) {
+            return;
+        }
+        FollowSuggestionIndex current = index;
+        Set<String> following = followGraph.getFollowing();
+        for (String followed : new ArrayList<>(current.getFollowed())) {
+            if (!following.contains(followed)) {
+                current.removeFollowed(followed);
+            }
+        }
+        for (String followed : following) {
+            if (current.getFollowed().size() + pendingSources.size() >= MAX_SOURCES) {
+                break;
+            }
+            if (current.getFollowed().contains(followed) || !pendingSources.add(followed)) {
+                continue;
+            }
+            queryScheduler.schedule(QueryScheduler.Priority.PREFETCH, () -> participantRepository.fetchFollowUsernames(followed, "following"))
+                    .addOnSuccessListener(followedFollowing -> {
+                        pendingSources.remove(followed);
+                        // Skip if the index was rebuilt or the participant was unfollowed meanwhile
+                        if (index == current && followGraph.isFollowing(followed)) {
+                            current.addFollowed(followed, followedFollowing);
+                        }
+                    })
+                    .addOnFailureListener(e -> {
+                        pendingSources.remove(followed);
+                        Log.e(TAG, "Failed to read the following of " + followed, e);
+                    });
+        }
+    }
+}
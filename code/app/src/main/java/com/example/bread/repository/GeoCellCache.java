@@ -0,0 +1,118 @@
+package com.example.bread.repository;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bread.model.MoodEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A singleton in-memory cache of the results of the geohash cell queries of the map, so that panning
+ * only queries the cells that were not loaded recently. Cells are keyed by the participant they were
+ * loaded for and the geohash range of the cell, expire after {@link #TTL_MS}, and at most
+ * {@link #MAX_CELLS} are kept, evicting the least recently used. The following list the cells were
+ * loaded against is cached alongside them, and the cells of a participant are dropped when it changes.
+ */
+public class GeoCellCache {
+    public static final long TTL_MS = 5 * 60 * 1000;
+    public static final int MAX_CELLS = 256;
+    private static GeoCellCache instance;
+
+    private static class Entry<T> {
+        final T value;
+        final long loadedAt;
+
+        Entry(T value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - loadedAt > TTL_MS;
+        }
+    }
+
+    private final Map<String, Entry<List<MoodEvent>>> cells = new LinkedHashMap<String, Entry<List<MoodEvent>>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<List<MoodEvent>>> eldest) {
+            return size() > MAX_CELLS;
+        }
+    };
+    private final Map<String, Entry<List<String>>> following = new HashMap<>();
+
+    GeoCellCache() {
+    }
+
+    public static synchronized GeoCellCache getInstance() {
+        if (instance == null) {
+            instance = new GeoCellCache();
+        }
+        return instance;
+    }
+
+    private static String cellKey(String username, String startHash, String endHash) {
+        return username + "/" + startHash + "-" + endHash;
+    }
+
+    /**
+     * Returns the cached mood events of a cell
+     *
+     * @return the mood events of the cell, or null if the cell is not cached or expired
+     */
+    @Nullable
+    synchronized List<MoodEvent> getCell(@NonNull String username, @NonNull String startHash, @NonNull String endHash) {
+        String key = cellKey(username, startHash, endHash);
+        Entry<List<MoodEvent>> entry = cells.get(key);
+        if (entry == null || entry.isExpired()) {
+            cells.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void putCell(@NonNull String username, @NonNull String startHash, @NonNull String endHash, @NonNull List<MoodEvent> events) {
+        cells.put(cellKey(username, startHash, endHash), new Entry<>(new ArrayList<>(events), SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Returns the cached following list of a participant
+     *
+     * @return the usernames the participant follows, or null if not cached or expired
+     */
+    @Nullable
+    synchronized List<String> getFollowing(@NonNull String username) {
+        Entry<List<String>> entry = following.get(username);
+        return entry == null || entry.isExpired() ? null : entry.value;
+    }
+
+    /**
+     * Caches the following list of a participant, dropping their cells if it changed
+     */
+    synchronized void putFollowing(@NonNull String username, @NonNull List<String> followingList) {
+        Entry<List<String>> previous = following.put(username, new Entry<>(new ArrayList<>(followingList), SystemClock.elapsedRealtime()));
+        if (previous != null && !previous.value.equals(followingList)) {
+            String prefix = username + "/";
+            for (Iterator<String> it = cells.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all cached cells and following lists
+     */
+    public synchronized void clear() {
+        cells.clear();
+        following.clear();
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.bread.repository;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bread.firebase.FirebaseService;
+import com.example.bread.utils.ImageHandler;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Repository class for the images of mood events and participants. Images are stored once, as binary
+ * blobs, in a content-addressed collection, keyed by {@link ImageHandler#contentHash}, so that the documents
+ * showing them only carry the hash and a tiny thumbnail and queries over them stay small. Images are
+ * only read when they are about to be shown.
+ */
+public class ImageRepository {
+    private final FirebaseService firebaseService;
+    private static final String TAG = "ImageRepository";
+    private static final Executor VERSION_EXECUTOR = Executors.newSingleThreadExecutor();
+    // Documents read per migration page; each holds an image of up to 64 KB
+    private static final int MIGRATION_PAGE_SIZE = 20;
+
+    public ImageRepository() {
+        firebaseService = new FirebaseService();
+    }
+
+    public ImageRepository(FirebaseService firebaseService) {
+        this.firebaseService = firebaseService;
+    }
+
+    private CollectionReference getImageCollRef() {
+        return firebaseService.getDb().collection("images");
+    }
+
+    /**
+     * Returns the reference to the document of an image
+     *
+     * @param hash The content hash of the image
+     * @return The reference to the image document
+     */
+    public DocumentReference getImageRef(@NonNull String hash) {
+        return getImageCollRef().document(hash);
+    }
+
+    /**
+     * The versions of an image stored for a mood event
+     */
+    public static class StoredImage {
+        private final String hash;
+        private final String listHash;
+        private final String blurHash;
+
+        StoredImage(@NonNull String hash, @Nullable String listHash, @Nullable String blurHash) {
+            this.hash = hash;
+            this.listHash = listHash;
+            this.blurHash = blurHash;
+        }
+
+        /**
+         * Returns the content hash of the full image
+         */
+        @NonNull
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Returns the content hash of the list-size image, or null if the full image is small enough
+         */
+        @Nullable
+        public String getListHash() {
+            return listHash;
+        }
+
+        /**
+         * Returns the BlurHash placeholder of the image, or null if it could not be decoded
+         */
+        @Nullable
+        public String getBlurHash() {
+            return blurHash;
+        }
+    }
+
+    /**
+     * Stores an image in the images collection as binary blobs, at full size and at
+     * {@link ImageHandler#LIST_IMAGE_SIZE} for lists, and creates its BlurHash placeholder. The
+     * smaller versions are created in the background and both versions are written in one batch.
+     * Storing the same image again rewrites the same documents, so duplicates are stored once.
+     *
+     * @param bytes             The encoded image
+     * @param onSuccessListener The listener to be called with the stored versions of the image
+     * @param onFailureListener The listener to be called when the image cannot be stored
+     */
+    public void uploadImage(@NonNull byte[] bytes, @NonNull OnSuccessListener<StoredImage> onSuccessListener, OnFailureListener onFailureListener) {
+        createVersions(bytes)
+                .onSuccessTask(versions -> {
+                    WriteBatch batch = firebaseService.getDb().batch();
+                    addImageWrites(batch, bytes, versions);
+                    return batch.commit().onSuccessTask(aVoid -> Tasks.forResult(versions.stored));
+                })
+                .addOnSuccessListener(onSuccessListener)
+                .addOnFailureListener(onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to upload image", e));
+    }
+
+    private static class Versions {
+        final byte[] listBytes;
+        final StoredImage stored;
+
+        Versions(byte[] listBytes, StoredImage stored) {
+            this.listBytes = listBytes;
+            this.stored = stored;
+        }
+    }
+
+    // Decoding for the smaller versions would stall the main thread, so they are created on the executor
+    private static Task<Versions> createVersions(@NonNull byte[] bytes) {
+        return Tasks.call(VERSION_EXECUTOR, () -> {
+            byte[] listBytes = ImageHandler.createListImage(bytes);
+            StoredImage stored = new StoredImage(ImageHandler.contentHash(bytes),
+                    listBytes != null ? ImageHandler.contentHash(listBytes) : null, ImageHandler.createBlurHash(bytes));
+            return new Versions(listBytes, stored);
+        });
+    }
+
+    private void addImageWrites(@NonNull WriteBatch batch, @NonNull byte[] bytes, @NonNull Versions versions) {
+        batch.set(getImageRef(versions.stored.getHash()), toImageDocument(bytes));
+        if (versions.listBytes != null) {
+            batch.set(getImageRef(versions.stored.getListHash()), toImageDocument(versions.listBytes));
+        }
+    }
+
+    /**
+     * Fetches an image from the images collection. Images stored as base64 text before images were
+     * stored as blobs are decoded transparently.
+     *
+     * @param hash              The content hash of the image
+     * @param onSuccessListener The listener to be called with the encoded image
+     * @param onFailureListener The listener to be called when the image cannot be fetched
+     */
+    public void fetchImage(@NonNull String hash, @NonNull OnSuccessListener<byte[]> onSuccessListener, OnFailureListener onFailureListener) {
+        getImageRef(hash).get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    byte[] bytes = readImageData(documentSnapshot.get("data"));
+                    if (bytes == null) {
+                        if (onFailureListener != null) {
+                            onFailureListener.onFailure(new IllegalStateException("Image not found: " + hash));
+                        }
+                        return;
+                    }
+                    onSuccessListener.onSuccess(bytes);
+                })
+                .addOnFailureListener(onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to fetch image: " + hash, e));
+    }
+
+    private static Map<String, Object> toImageDocument(@NonNull byte[] bytes) {
+        Map<String, Object> image = new HashMap<>();
+        image.put("data", Blob.fromBytes(bytes));
+        return image;
+    }
+
+    @Nullable
+    private static byte[] readImageData(@Nullable Object data) {
+        if (data instanceof Blob) {
+            return ((Blob) data).toBytes();
+        }
+        if (data instanceof String) {
+            return ImageHandler.base64ToBytes((String) data);
+        }
+        return null;
+    }
+
+    /**
+     * Moves the images stored inline in existing mood event and participant documents into the images
+     * collection, leaving the hashes and placeholder of a mood event image, or the hash and thumbnail
+     * of a profile picture, in their place. Each document is migrated in its own
+     * batch together with its image, so the migration can be interrupted and run again safely.
+     *
+     * <p>
+     * Documents are read in pages of {@link #MIGRATION_PAGE_SIZE}, and the next page is only read once
+     * the batches of the previous one have committed, so at most one page of images is in memory and
+     * at most {@link #MIGRATION_PAGE_SIZE} batches are in flight.
+     * </p>
+     *
+     * @param onSuccessListener The listener to be called with the number of migrated documents
+     * @param onFailureListener The listener to be called when the documents to migrate cannot be queried
+     */
+    public void migrateInlineImages(@NonNull OnSuccessListener<Integer> onSuccessListener, OnFailureListener onFailureListener) {
+        OnFailureListener failureListener = onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to migrate inline images", e);
+        migrateCollection("moodEvents", "attachedImage", this::migrateMoodEvent, null, 0)
+                .onSuccessTask(migrated -> migrateCollection("participants", "profilePicture", this::migrateParticipant, null, migrated))
+                .addOnSuccessListener(onSuccessListener)
+                .addOnFailureListener(failureListener);
+    }
+
+    /**
+     * Migrates the documents of a collection holding an inline image, one page at a time
+     *
+     * @param collection The collection to migrate
+     * @param field      The field holding the inline image
+     * @param migrate    Migrates a single document
+     * @param startAfter The last document of the previous page, or null for the first page
+     * @param migrated   The number of documents migrated so far
+     * @return A task with the number of documents migrated so far once the collection is done
+     */
+    private Task<Integer> migrateCollection(@NonNull String collection, @NonNull String field, @NonNull Function<DocumentSnapshot, Task<Void>> migrate,
+                                            @Nullable DocumentSnapshot startAfter, int migrated) {
+        // Ordered by id only, since an inequality filter on the image would have to order by the image itself
+        Query query = firebaseService.getDb().collection(collection)
+                .orderBy(FieldPath.documentId())
+                .limit(MIGRATION_PAGE_SIZE);
+        if (startAfter != null) {
+            query = query.startAfter(startAfter);
+        }
+        return query.get().onSuccessTask(page -> {
+            List<Task<Void>> commits = new ArrayList<>();
+            for (DocumentSnapshot doc : page.getDocuments()) {
+                String image = doc.getString(field);
+                if (image != null && !image.isEmpty()) {
+                    commits.add(migrate.apply(doc));
+                }
+            }
+            return Tasks.whenAllComplete(commits).onSuccessTask(done -> {
+                int total = migrated;
+                for (Task<Void> commit : commits) {
+                    if (commit.isSuccessful()) {
+                        total++;
+                    } else {
+                        Log.e(TAG, "Failed to migrate an inline image", commit.getException());
+                    }
+                }
+                if (page.size() < MIGRATION_PAGE_SIZE) {
+                    return Tasks.forResult(total);
+                }
+                return migrateCollection(collection, field, migrate, page.getDocuments().get(page.size() - 1), total);
+            });
+        });
+    }
+
+    private Task<Void> migrateMoodEvent(@NonNull DocumentSnapshot doc) {
+        byte[] bytes = ImageHandler.base64ToBytes(doc.getString("attachedImage"));
+        if (bytes == null) {
+            return Tasks.forException(new IllegalStateException("Invalid inline image in " + doc.getReference().getPath()));
+        }
+        return createVersions(bytes).onSuccessTask(versions -> {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("attachedImageHash", versions.stored.getHash());
+            updates.put("attachedImageListHash", versions.stored.getListHash());
+            updates.put("attachedImageBlurHash", versions.stored.getBlurHash());
+            updates.put("attachedImage", FieldValue.delete());
+
+            WriteBatch batch = firebaseService.getDb().batch();
+            addImageWrites(batch, bytes, versions);
+            batch.update(doc.getReference(), updates);
+            return batch.commit();
+        });
+    }
+
+    private Task<Void> migrateParticipant(@NonNull DocumentSnapshot doc) {
+        byte[] bytes = ImageHandler.base64ToBytes(doc.getString("profilePicture"));
+        if (bytes == null) {
+            return Tasks.forException(new IllegalStateException("Invalid inline image in " + doc.getReference().getPath()));
+        }
+        String hash = ImageHandler.contentHash(bytes);
+        // Creating the thumbnail decodes the image, so it runs on the executor like createVersions
+        return Tasks.call(VERSION_EXECUTOR, () -> ImageHandler.createThumbnail(bytes)).onSuccessTask(thumbnail -> {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("profilePictureHash", hash);
+            updates.put("profilePictureThumbnail", thumbnail);
+            updates.put("profilePicture", FieldValue.delete());
+
+            WriteBatch batch = firebaseService.getDb().batch();
+            batch.set(getImageRef(hash), toImageDocument(bytes));
+            batch.update(doc.getReference(), updates);
+            return batch.commit();
+        });
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.bread.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.bread.model.MoodEvent;
+import com.example.bread.utils.FeedUtils;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A live view of the first page of a participant's home feed, kept up to date by a snapshot listener
+ * on their feed inbox. Only the entries that changed are resolved and reported to observers. The
+ * instance outlives the screens observing it, so returning to the home feed re-uses the current
+ * state without reading it again.
+ *
+ * <p>
+ * Events of participants with more than {@link MoodEventRepository#FANOUT_FOLLOWER_LIMIT} followers
+ * are merged in when the feed starts, but are not updated live.
+ * </p>
+ *
+ * <p>
+ * The followed participants are kept in sync with the {@link FollowGraph} of the participant. When
+ * they change, the feed is rebuilt from its latest snapshot, so that entries backfilled for a newly
+ * followed participant appear and entries of an unfollowed participant are dropped.
+ * </p>
+ */
+public class LiveFeed {
+    private static final String TAG = "LiveFeed";
+    // Detach the snapshot listener once nobody has observed the feed for this long
+    private static final long IDLE_TIMEOUT_MS = 30 * 60 * 1000;
+
+    /**
+     * Observer of the changes to a live feed. All methods are called on the main thread.
+     */
+    public interface Observer {
+        /**
+         * Called with the whole feed when the observer is added or the feed (re)starts
+         *
+         * @param events   the mood events of the feed, newest first
+         * @param headPage the page to continue from to load older mood events
+         */
+        void onReset(@NonNull List<MoodEvent> events, @NonNull FeedPage headPage);
+
+        /**
+         * Called when a mood event was added to the feed
+         *
+         * @param event the added mood event
+         */
+        void onEventAdded(@NonNull MoodEvent event);
+
+        /**
+         * Called when a mood event of the feed was updated
+         *
+         * @param event the updated mood event
+         */
+        void onEventChanged(@NonNull MoodEvent event);
+
+        /**
+         * Called when a mood event was removed from the feed
+         *
+         * @param event the removed mood event
+         */
+        void onEventRemoved(@NonNull MoodEvent event);
+    }
+
+    private final MoodEventRepository moodEventRepository;
+    private final ParticipantRepository participantRepository;
+    private final String username;
+    private final int pageSize;
+
+    // Sorted newest first
+    private final List<MoodEvent> events = new ArrayList<>();
+    private final Map<String, MoodEvent> eventsById = new HashMap<>();
+    private final Set<Observer> observers = new LinkedHashSet<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable idleStop = this::stop;
+    private final FollowGraph.Observer followGraphObserver = this::onFollowingChanged;
+
+    private ListenerRegistration registration;
+    private FollowGraph followGraph;
+    private QuerySnapshot lastSnapshot;
+    private Set<String> following = new HashSet<>();
+    private Set<String> largeAccounts = new HashSet<>();
+    private FeedPage headPage;
+    private boolean starting = false;
+    private boolean initialized = false;
+
+    LiveFeed(@NonNull MoodEventRepository moodEventRepository, @NonNull ParticipantRepository participantRepository, @NonNull String username, int pageSize) {
+        this.moodEventRepository = moodEventRepository;
+        this.participantRepository = participantRepository;
+        this.username = username;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the username of the participant whose feed this is
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns whether the feed has loaded and observers are reset to it without reads
+     *
+     * @return true if the feed has loaded
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Adds an observer, starting the feed if needed. If the feed already has data, the observer is
+     * reset to it immediately without any reads.
+     *
+     * @param observer the observer to add
+     */
+    public void addObserver(@NonNull Observer observer) {
+        handler.removeCallbacks(idleStop);
+        observers.add(observer);
+        if (initialized) {
+            observer.onReset(new ArrayList<>(events), headPage);
+        } else if (!starting) {
+            start();
+        }
+    }
+
+    /**
+     * Removes an observer. The feed keeps listening for a while so that returning to it is free.
+     *
+     * @param observer the observer to remove
+     */
+    public void removeObserver(@NonNull Observer observer) {
+        observers.remove(observer);
+        if (observers.isEmpty()) {
+            handler.postDelayed(idleStop, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Stops listening and drops the state of the feed. The feed restarts when an observer is added.
+     */
+    public void stop() {
+        handler.removeCallbacks(idleStop);
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        if (followGraph != null) {
+            followGraph.removeObserver(followGraphObserver);
+            followGraph = null;
+        }
+        lastSnapshot = null;
+        starting = false;
+        initialized = false;
+        events.clear();
+        eventsById.clear();
+    }
+
+    private void start() {
+        starting = true;
+        followGraph = participantRepository.getFollowGraph(username);
+        followGraph.addObserver(followGraphObserver);
+        if (followGraph.isLoaded()) {
+            listen(followGraph.getFollowing());
+            return;
+        }
+        participantRepository.fetchFollowing(username, followingList -> {
+            if (!starting) {
+                return;
+            }
+            listen(new HashSet<>(followingList));
+        }, e -> {
+            starting = false;
+            Log.e(TAG, "Failed to fetch following to start the feed of " + username, e);
+        });
+    }
+
+    private void listen(@NonNull Set<String> followingSet) {
+        following = followingSet;
+        moodEventRepository.fetchLargeAccounts(following, largeAccountSet -> {
+            if (!starting) {
+                return;
+            }
+            largeAccounts = largeAccountSet;
+            registration = moodEventRepository.getFeedCollRef(username)
+                    .orderBy("timestamp", Query.Direction.DESCENDING)
+                    .limit(pageSize)
+                    .addSnapshotListener((snapshot, e) -> {
+                        if (e != null) {
+                            Log.e(TAG, "Error listening to the feed of " + username, e);
+                            return;
+                        }
+                        if (snapshot != null) {
+                            onSnapshot(snapshot);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Rebuilds the feed from its latest snapshot when the followed participants change
+     */
+    private void onFollowingChanged() {
+        if (followGraph == null || !followGraph.isLoaded() || registration == null) {
+            return;
+        }
+        Set<String> latest = followGraph.getFollowing();
+        if (latest.equals(following)) {
+            return;
+        }
+        following = latest;
+        moodEventRepository.fetchLargeAccounts(latest, largeAccountSet -> {
+            // Skip if the feed stopped or the followed participants changed again meanwhile
+            if (registration == null || following != latest) {
+                return;
+            }
+            largeAccounts = largeAccountSet;
+            if (lastSnapshot != null) {
+                initialize(lastSnapshot);
+            }
+        });
+    }
+
+    private void onSnapshot(@NonNull QuerySnapshot snapshot) {
+        lastSnapshot = snapshot;
+        List<DocumentSnapshot> entryDocs = snapshot.getDocuments();
+        DocumentSnapshot lastEntry = entryDocs.isEmpty() ? null : entryDocs.get(entryDocs.size() - 1);
+        Date tail = lastEntry != null ? lastEntry.getDate("timestamp") : null;
+        boolean full = entryDocs.size() >= pageSize;
+
+        if (!initialized) {
+            initialize(snapshot);
+            return;
+        }
+
+        List<String> changedIds = new ArrayList<>();
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            DocumentSnapshot doc = change.getDocument();
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                // An entry pushed out of the limit by a newer one is still part of the feed
+                Date timestamp = doc.getDate("timestamp");
+                boolean evicted = full && timestamp != null && tail != null && !timestamp.after(tail);
+                if (!evicted) {
+                    removeEvent(doc.getId());
+                }
+            } else if (isFollowed(doc)) {
+                changedIds.add(doc.getId());
+            }
+        }
+        moodEventRepository.fetchEventsByIds(changedIds, QueryScheduler.Priority.VISIBLE, changedEvents -> {
+            for (MoodEvent event : changedEvents) {
+                upsertEvent(event);
+            }
+        });
+    }
+
+    private void initialize(@NonNull QuerySnapshot snapshot) {
+        List<DocumentSnapshot> entryDocs = snapshot.getDocuments();
+        DocumentSnapshot lastEntry = entryDocs.isEmpty() ? null : entryDocs.get(entryDocs.size() - 1);
+        boolean full = entryDocs.size() >= pageSize;
+        initialize(entryDocs, lastEntry, full && lastEntry != null ? lastEntry.getDate("timestamp") : null, full);
+    }
+
+    private void initialize(@NonNull List<DocumentSnapshot> entryDocs, DocumentSnapshot lastEntry, Date oldest, boolean hasMore) {
+        List<String> eventIds = new ArrayList<>();
+        for (DocumentSnapshot doc : entryDocs) {
+            if (isFollowed(doc)) {
+                eventIds.add(doc.getId());
+            }
+        }
+        moodEventRepository.fetchEventsByIds(eventIds, QueryScheduler.Priority.VISIBLE, inboxEvents ->
+                moodEventRepository.fetchPulledEvents(largeAccounts, null, oldest, pageSize, QueryScheduler.Priority.VISIBLE, pulledEvents -> {
+                    events.clear();
+                    eventsById.clear();
+                    for (MoodEvent event : moodEventRepository.mergeFeed(inboxEvents, pulledEvents)) {
+                        events.add(event);
+                        eventsById.put(event.getId(), event);
+                    }
+                    headPage = new FeedPage(new ArrayList<>(events), hasMore, following, largeAccounts, lastEntry, oldest);
+                    initialized = true;
+                    moodEventRepository.replaceCachedFeed(username, events);
+                    for (Observer observer : new ArrayList<>(observers)) {
+                        observer.onReset(new ArrayList<>(events), headPage);
+                    }
+                }));
+    }
+
+    private boolean isFollowed(@NonNull DocumentSnapshot entryDoc) {
+        DocumentReference authorRef = entryDoc.getDocumentReference("participantRef");
+        return authorRef != null && following.contains(authorRef.getId());
+    }
+
+    private void upsertEvent(@NonNull MoodEvent event) {
+        MoodEvent existing = eventsById.remove(event.getId());
+        if (existing != null) {
+            events.remove(existing);
+        }
+        events.add(FeedUtils.insertionIndex(events, event), event);
+        eventsById.put(event.getId(), event);
+        moodEventRepository.cacheFeedEvents(username, Collections.singletonList(event));
+        for (Observer observer : new ArrayList<>(observers)) {
+            if (existing != null) {
+                observer.onEventChanged(event);
+            } else {
+                observer.onEventAdded(event);
+            }
+        }
+    }
+
+    private void removeEvent(@NonNull String eventId) {
+        MoodEvent existing = eventsById.remove(eventId);
+        if (existing == null) {
+            return;
+        }
+        events.remove(existing);
+        moodEventRepository.uncacheFeedEvent(username, eventId);
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onEventRemoved(existing);
+        }
+    }
+}
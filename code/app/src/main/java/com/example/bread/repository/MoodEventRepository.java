@@ -1,17 +1,22 @@
 package com.example.bread.repository;
 
 import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.example.bread.firebase.FirebaseService;
 import com.example.bread.model.Comment;
+import com.example.bread.model.FeedEntry;
 import com.example.bread.model.MoodEvent;
+import com.example.bread.utils.BatchUtils;
+import com.example.bread.utils.ImageHandler;
 import com.firebase.geofire.GeoFireUtils;
 import com.firebase.geofire.GeoLocation;
 import com.firebase.geofire.GeoQueryBounds;
-import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
@@ -19,17 +24,24 @@ import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Repository class for handling mood events in the database
@@ -38,20 +50,82 @@ public class MoodEventRepository {
     private final FirebaseService firebaseService;
     private static final String TAG = "MoodEventRepository";
     private static final int MAX_EVENTS_PER_USER = 3;
-    private final ParticipantRepository participantRepository = new ParticipantRepository();
+    public static final int DEFAULT_FEED_PAGE_SIZE = 20;
+    // Authors with more followers than this are pulled at read time instead of fanned out on write
+    public static final int FANOUT_FOLLOWER_LIMIT = 500;
+    // Firestore limits a write batch to 500 operations and an "in" filter to 30 values
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final int MAX_WHERE_IN_SIZE = 30;
+    private final ParticipantRepository participantRepository;
+    private final ImageRepository imageRepository;
+    private final QueryScheduler queryScheduler = QueryScheduler.getInstance();
+    private final GeoCellCache geoCellCache = GeoCellCache.getInstance();
+    // Shared by all instances so that the live feed survives the screens observing it
+    private static LiveFeed liveHomeFeed;
+    private FeedCache feedCache;
+
+    /**
+     * Listener for the incremental results of {@link #streamForEventsFromFollowing}
+     */
+    public interface FeedStreamListener {
+        /**
+         * Called with the mood events of each query as soon as it completes, before the deadline
+         *
+         * @param batch the mood events of the query, newest first
+         */
+        void onBatch(@NonNull List<MoodEvent> batch);
+
+        /**
+         * Called once, when all queries have completed or the deadline has passed
+         *
+         * @param pendingQueries the number of queries that had not completed yet
+         */
+        void onSettled(int pendingQueries);
+
+        /**
+         * Called with the mood events of a query that completed after the deadline
+         *
+         * @param batch the mood events of the query, newest first
+         */
+        void onLateBatch(@NonNull List<MoodEvent> batch);
+    }
 
     public MoodEventRepository() {
         firebaseService = new FirebaseService();
+        participantRepository = new ParticipantRepository();
+        imageRepository = new ImageRepository();
     }
 
     public MoodEventRepository(FirebaseService firebaseService) {
         this.firebaseService = firebaseService;
+        this.participantRepository = new ParticipantRepository(firebaseService);
+        this.imageRepository = new ImageRepository(firebaseService);
+    }
+
+    /**
+     * Sets the on-device cache that fetched feeds are written through to
+     *
+     * @param feedCache The feed cache, or null to disable caching
+     */
+    public void setFeedCache(@Nullable FeedCache feedCache) {
+        this.feedCache = feedCache;
     }
 
     private CollectionReference getMoodEventCollRef() {
         return firebaseService.getDb().collection("moodEvents");
     }
 
+    CollectionReference getFeedCollRef(@NonNull String username) {
+        return participantRepository.getParticipantRef(username).collection("feed");
+    }
+
+    /**
+     * Returns the collection holding the latest located mood event of each participant, keyed by username
+     */
+    private CollectionReference getLatestLocatedCollRef() {
+        return firebaseService.getDb().collection("latestLocatedEvents");
+    }
+
     /**
      * Fetches all mood events from the database with the given participant reference
      *
@@ -84,129 +158,643 @@ public class MoodEventRepository {
     /**
      * fetches all mood events that are created by the participants that the given participant is following
      *
+     * <p>
+     * Followed participants are grouped into "in" queries of {@link #MAX_WHERE_IN_SIZE} references each,
+     * so 300 followed participants cost 10 queries instead of 300. A query limit would apply to the whole
+     * chunk, letting one participant who posts a lot crowd out the others, so chunks are not limited and the
+     * results are trimmed on the client to the latest {@link #MAX_EVENTS_PER_USER} events of each participant.
+     * </p>
+     *
      * @param username          The username of the participant whose following's mood events are to be fetched
      * @param onSuccessListener The listener to be called when the mood events are successfully fetched
      * @param onFailureListener The listener to be called when the mood events cannot be fetched
      */
     public void fetchForEventsFromFollowing(@NonNull String username, @NonNull OnSuccessListener<List<MoodEvent>> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
         participantRepository.fetchFollowing(username, following -> {
-            List<MoodEvent> allMoodEvents = new ArrayList<>();
-
             // Handle the case of no followed users
             if (following == null || following.isEmpty()) {
-                onSuccessListener.onSuccess(allMoodEvents);
+                onSuccessListener.onSuccess(new ArrayList<>());
                 return;
             }
 
-            // Counter to track when all queries are complete
-            AtomicInteger queriesRemaining = new AtomicInteger(following.size());
+            List<DocumentReference> followingRefs = new ArrayList<>();
+            for (String followingUsername : following) {
+                followingRefs.add(participantRepository.getParticipantRef(followingUsername));
+            }
+
+            List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+            for (List<DocumentReference> chunk : BatchUtils.partition(followingRefs, MAX_WHERE_IN_SIZE)) {
+                tasks.add(queryScheduler.schedule(QueryScheduler.Priority.VISIBLE, () -> followingChunkQuery(chunk).get()));
+            }
+
+            // Failed chunks are logged and skipped, the rest of the feed is still returned
+            Tasks.whenAllComplete(tasks).addOnCompleteListener(t ->
+                    onSuccessListener.onSuccess(trimPerParticipant(collectEvents(tasks), MAX_EVENTS_PER_USER)));
+        }, onFailureListener);
+    }
+
+    /**
+     * Streaming variant of {@link #fetchForEventsFromFollowing}. Instead of waiting for every query, the
+     * mood events of each chunk of followed participants are delivered as soon as that query completes,
+     * so the first rows can be shown as soon as the fastest query answers. Once all queries complete or
+     * the deadline passes the listener is settled, and queries completing afterwards are reported as
+     * late batches.
+     *
+     * @param username          The username of the participant whose following's mood events are to be fetched
+     * @param deadlineMillis    The time after which the stream is settled even if queries are still pending
+     * @param listener          The listener to be called with the incremental results
+     * @param onFailureListener The listener to be called when the followed participants cannot be fetched
+     */
+    public void streamForEventsFromFollowing(@NonNull String username, long deadlineMillis, @NonNull FeedStreamListener listener, @NonNull OnFailureListener onFailureListener) {
+        participantRepository.fetchFollowing(username, following -> {
+            if (following == null || following.isEmpty()) {
+                listener.onSettled(0);
+                return;
+            }
 
+            List<DocumentReference> followingRefs = new ArrayList<>();
             for (String followingUsername : following) {
-                getMoodEventCollRef()
-                        .whereEqualTo("participantRef", participantRepository.getParticipantRef(followingUsername))
-                        .orderBy("timestamp", Query.Direction.DESCENDING)
-                        .limit(MAX_EVENTS_PER_USER)
-                        .get()
-                        .addOnSuccessListener(queryDocumentSnapshots -> {
-                            List<MoodEvent> moodEvents = new ArrayList<>();
-
-                            // Process each document, setting the ID explicitly
-                            for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                                MoodEvent event = doc.toObject(MoodEvent.class);
-                                if (event != null) {
-                                    event.setId(doc.getId());
-                                    moodEvents.add(event);
-                                }
-                            }
-
-                            // Add to our combined results
-                            synchronized (allMoodEvents) {
-                                allMoodEvents.addAll(moodEvents);
-                            }
-
-                            // If all queries are complete, return the results
-                            if (queriesRemaining.decrementAndGet() <= 0) {
-                                onSuccessListener.onSuccess(allMoodEvents);
-                            }
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "Error fetching events for " + followingUsername, e);
-
-                            // Even on failure, decrement counter and check if done
-                            if (queriesRemaining.decrementAndGet() <= 0) {
-                                onSuccessListener.onSuccess(allMoodEvents);
-                            }
-                        });
+                followingRefs.add(participantRepository.getParticipantRef(followingUsername));
+            }
+            List<List<DocumentReference>> chunks = BatchUtils.partition(followingRefs, MAX_WHERE_IN_SIZE);
+
+            AtomicInteger pendingQueries = new AtomicInteger(chunks.size());
+            AtomicBoolean settled = new AtomicBoolean(false);
+            Handler handler = new Handler(Looper.getMainLooper());
+            Runnable deadline = () -> {
+                if (settled.compareAndSet(false, true)) {
+                    Log.w(TAG, pendingQueries.get() + " feed queries still pending at the deadline for " + username);
+                    listener.onSettled(pendingQueries.get());
+                }
+            };
+            handler.postDelayed(deadline, deadlineMillis);
+
+            for (List<DocumentReference> chunk : chunks) {
+                queryScheduler.schedule(QueryScheduler.Priority.VISIBLE, () -> followingChunkQuery(chunk).get()).addOnCompleteListener(task -> {
+                    // Chunks are not limited, so each holds every event of its participants and trimming per chunk is exact
+                    List<MoodEvent> batch = trimPerParticipant(collectEvents(Collections.singletonList(task)), MAX_EVENTS_PER_USER);
+                    int remaining = pendingQueries.decrementAndGet();
+                    if (settled.get()) {
+                        if (!batch.isEmpty()) {
+                            cacheFeedEvents(username, batch);
+                            listener.onLateBatch(batch);
+                        }
+                        return;
+                    }
+                    if (!batch.isEmpty()) {
+                        cacheFeedEvents(username, batch);
+                        listener.onBatch(batch);
+                    }
+                    if (remaining == 0 && settled.compareAndSet(false, true)) {
+                        handler.removeCallbacks(deadline);
+                        listener.onSettled(0);
+                    }
+                });
             }
         }, onFailureListener);
     }
 
     /**
-     * Fetches all mood events in the radius of the given location that the participant is following
+     * Builds the query for the mood events of a chunk of followed participants. The query is not limited,
+     * since a limit applies to the chunk as a whole rather than to each participant; callers trim the
+     * results with {@link #trimPerParticipant}.
+     *
+     * @param chunk At most {@link #MAX_WHERE_IN_SIZE} participant references
+     * @return The query, newest events first
+     */
+    private Query followingChunkQuery(@NonNull List<DocumentReference> chunk) {
+        return getMoodEventCollRef()
+                .whereIn("participantRef", chunk)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    /**
+     * Keeps only the latest mood events of each participant
+     *
+     * @param moodEvents The mood events to trim
+     * @param perUser    The number of mood events to keep for each participant
+     * @return The trimmed mood events, newest first
+     */
+    private List<MoodEvent> trimPerParticipant(@NonNull List<MoodEvent> moodEvents, int perUser) {
+        List<MoodEvent> sorted = new ArrayList<>(moodEvents);
+        sorted.sort(Comparator.reverseOrder());
+
+        Map<String, Integer> countByUser = new HashMap<>();
+        List<MoodEvent> trimmed = new ArrayList<>();
+        for (MoodEvent event : sorted) {
+            String user = event.getParticipantRef() != null ? event.getParticipantRef().getPath() : "";
+            int count = countByUser.getOrDefault(user, 0);
+            if (count < perUser) {
+                countByUser.put(user, count + 1);
+                trimmed.add(event);
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Fetches a page of the home feed of the given participant from their feed inbox.
+     *
+     * <p>
+     * Mood events are fanned out on write into the inbox of every follower, so each page is read
+     * with a single ordered query continuing after the last inbox entry of the previous page, instead
+     * of one query per followed participant. Participants with more than {@link #FANOUT_FOLLOWER_LIMIT}
+     * followers are not fanned out and their events within the time range of the page are pulled and
+     * merged in here instead. An empty first page may mean the inbox has not been populated yet, in
+     * which case callers can fall back to {@link #streamForEventsFromFollowing}.
+     * </p>
+     *
+     * @param username          The username of the participant whose feed is to be fetched
+     * @param previousPage      The previously fetched page, or null to fetch the first page
+     * @param pageSize          The number of inbox entries to read for the page
+     * @param onSuccessListener The listener to be called with the page, newest first
+     * @param onFailureListener The listener to be called when the page cannot be fetched
+     */
+    public void fetchHomeFeedPage(@NonNull String username, @Nullable FeedPage previousPage, int pageSize, @NonNull OnSuccessListener<FeedPage> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        if (previousPage != null) {
+            if (!previousPage.hasMore()) {
+                onSuccessListener.onSuccess(FeedPage.last(new ArrayList<>()));
+                return;
+            }
+            fetchInboxPage(username, previousPage.following, previousPage.largeAccounts, previousPage, pageSize, onSuccessListener, onFailureListener);
+            return;
+        }
+        participantRepository.fetchFollowing(username, following -> {
+            if (following == null || following.isEmpty()) {
+                onSuccessListener.onSuccess(FeedPage.last(new ArrayList<>()));
+                return;
+            }
+            Set<String> followingSet = new HashSet<>(following);
+            // Later pages carry the large accounts along instead of looking them up again
+            fetchLargeAccounts(followingSet, largeAccounts ->
+                    fetchInboxPage(username, followingSet, largeAccounts, null, pageSize, onSuccessListener, onFailureListener));
+        }, onFailureListener);
+    }
+
+    private void fetchInboxPage(@NonNull String username, @NonNull Set<String> followingSet, @NonNull Set<String> largeAccounts, @Nullable FeedPage previousPage, int pageSize, @NonNull OnSuccessListener<FeedPage> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        Query query = getFeedCollRef(username).orderBy("timestamp", Query.Direction.DESCENDING);
+        if (previousPage != null && previousPage.lastEntry != null) {
+            query = query.startAfter(previousPage.lastEntry);
+        }
+        query.limit(pageSize).get()
+                .addOnSuccessListener(feedSnapshot -> {
+                    List<DocumentSnapshot> entryDocs = feedSnapshot.getDocuments();
+                    List<String> eventIds = new ArrayList<>();
+                    List<DocumentReference> staleEntries = new ArrayList<>();
+                    for (DocumentSnapshot doc : entryDocs) {
+                        FeedEntry entry = doc.toObject(FeedEntry.class);
+                        if (entry == null || entry.getParticipantRef() == null) {
+                            continue;
+                        }
+                        if (followingSet.contains(entry.getParticipantRef().getId())) {
+                            eventIds.add(doc.getId());
+                        } else {
+                            // Entries from participants that are no longer followed are removed lazily
+                            staleEntries.add(doc.getReference());
+                        }
+                    }
+                    deleteFeedEntries(staleEntries);
+
+                    boolean hasMore = entryDocs.size() >= pageSize;
+                    DocumentSnapshot lastEntry = entryDocs.isEmpty() ? null : entryDocs.get(entryDocs.size() - 1);
+                    Date newest = previousPage != null ? previousPage.oldestTimestamp : null;
+                    Date oldest = hasMore && lastEntry != null ? lastEntry.getDate("timestamp") : null;
+
+                    // Later pages are loaded ahead of the scroll position, so they yield to visible queries
+                    QueryScheduler.Priority priority = previousPage == null ? QueryScheduler.Priority.VISIBLE : QueryScheduler.Priority.PREFETCH;
+                    fetchEventsByIds(eventIds, priority, inboxEvents -> fetchPulledEvents(largeAccounts, newest, oldest, pageSize, priority, pulledEvents -> {
+                        List<MoodEvent> events = mergeFeed(inboxEvents, pulledEvents);
+                        cacheFeedEvents(username, events);
+                        onSuccessListener.onSuccess(new FeedPage(events, hasMore, followingSet, largeAccounts, lastEntry, oldest));
+                    }));
+                })
+                .addOnFailureListener(onFailureListener);
+    }
+
+    /**
+     * Reads the home feed of the given participant from the on-device cache, so that it can be shown
+     * instantly while the feed is revalidated from Firestore. Returns an empty list if no cache is set.
+     *
+     * @param username          The username of the participant whose feed is to be read
+     * @param onSuccessListener The listener to be called on the main thread with the cached feed, newest first
+     */
+    public void fetchCachedHomeFeed(@NonNull String username, @NonNull OnSuccessListener<List<MoodEvent>> onSuccessListener) {
+        if (feedCache == null) {
+            onSuccessListener.onSuccess(new ArrayList<>());
+            return;
+        }
+        feedCache.read(username, firebaseService.getDb(), onSuccessListener);
+    }
+
+    /**
+     * Writes fetched feed events through to the on-device cache, if one is set
+     */
+    void cacheFeedEvents(@NonNull String username, @NonNull List<MoodEvent> events) {
+        if (feedCache != null) {
+            feedCache.putAll(username, events);
+        }
+    }
+
+    /**
+     * Replaces the cached feed with the latest first page, if a cache is set
+     */
+    void replaceCachedFeed(@NonNull String username, @NonNull List<MoodEvent> events) {
+        if (feedCache != null) {
+            feedCache.replaceAll(username, events);
+        }
+    }
+
+    /**
+     * Removes a mood event that left the feed from the on-device cache, if one is set
+     */
+    void uncacheFeedEvent(@NonNull String username, @NonNull String eventId) {
+        if (feedCache != null) {
+            feedCache.remove(username, eventId);
+        }
+    }
+
+    /**
+     * Returns the live home feed of the given participant, kept up to date by a snapshot listener.
+     * The same instance is returned until another participant's feed is requested or
+     * {@link #stopLiveHomeFeed()} is called.
+     *
+     * @param username The username of the participant whose feed is to be observed
+     * @return The live home feed
+     */
+    public LiveFeed getLiveHomeFeed(@NonNull String username) {
+        synchronized (MoodEventRepository.class) {
+            if (liveHomeFeed == null || !liveHomeFeed.getUsername().equals(username)) {
+                if (liveHomeFeed != null) {
+                    liveHomeFeed.stop();
+                }
+                liveHomeFeed = new LiveFeed(this, participantRepository, username, DEFAULT_FEED_PAGE_SIZE);
+            }
+            return liveHomeFeed;
+        }
+    }
+
+    /**
+     * Stops the live home feed, for example when the participant signs out
+     */
+    public static void stopLiveHomeFeed() {
+        synchronized (MoodEventRepository.class) {
+            if (liveHomeFeed != null) {
+                liveHomeFeed.stop();
+                liveHomeFeed = null;
+            }
+        }
+    }
+
+    /**
+     * Copies the most recent mood events of a participant into the feed inbox of a new follower,
+     * so that the follower sees them without waiting for the next write.
+     *
+     * @param followerUsername The username of the participant whose feed is to be backfilled
+     * @param authorUsername   The username of the participant that was followed
+     */
+    public void backfillFeed(@NonNull String followerUsername, @NonNull String authorUsername) {
+        getMoodEventCollRef()
+                .whereEqualTo("participantRef", participantRepository.getParticipantRef(authorUsername))
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(MAX_EVENTS_PER_USER)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    WriteBatch batch = firebaseService.getDb().batch();
+                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
+                        MoodEvent event = doc.toObject(MoodEvent.class);
+                        if (event != null) {
+                            event.setId(doc.getId());
+                            batch.set(getFeedCollRef(followerUsername).document(doc.getId()), new FeedEntry(event, doc.getReference()));
+                        }
+                    }
+                    batch.commit().addOnFailureListener(e -> Log.e(TAG, "Failed to backfill feed of " + followerUsername + " with events from " + authorUsername, e));
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to fetch events to backfill feed of " + followerUsername, e));
+    }
+
+    /**
+     * Fetches the mood events with the given ids, in chunks of {@link #MAX_WHERE_IN_SIZE}.
+     * Events that no longer exist or whose chunk failed to load are skipped.
+     */
+    void fetchEventsByIds(@NonNull List<String> eventIds, @NonNull QueryScheduler.Priority priority, @NonNull OnSuccessListener<List<MoodEvent>> onSuccessListener) {
+        if (eventIds.isEmpty()) {
+            onSuccessListener.onSuccess(new ArrayList<>());
+            return;
+        }
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (List<String> chunk : BatchUtils.partition(eventIds, MAX_WHERE_IN_SIZE)) {
+            Query query = getMoodEventCollRef().whereIn(FieldPath.documentId(), chunk);
+            tasks.add(queryScheduler.schedule(priority, query::get));
+        }
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(t -> onSuccessListener.onSuccess(collectEvents(tasks)));
+    }
+
+    /**
+     * Fetches which of the followed participants are too large to be fanned out on write, so that
+     * their events are pulled instead. Failures are logged and treated as having no such participants.
+     *
+     * @param followingSet      The usernames of the followed participants
+     * @param onSuccessListener The listener to be called with the usernames of the large accounts
+     */
+    void fetchLargeAccounts(@NonNull Set<String> followingSet, @NonNull OnSuccessListener<Set<String>> onSuccessListener) {
+        participantRepository.fetchLargeAccounts(followingSet, FANOUT_FOLLOWER_LIMIT, onSuccessListener, e -> {
+            Log.e(TAG, "Failed to fetch large accounts to pull events from", e);
+            onSuccessListener.onSuccess(new HashSet<>());
+        });
+    }
+
+    /**
+     * Fetches the mood events of the given large accounts within the time range of a feed page
+     *
+     * @param largeAccounts The followed participants found by {@link #fetchLargeAccounts}
+     * @param newest        Exclusive upper bound of the time range, or null for no bound
+     * @param oldest        Inclusive lower bound of the time range, or null to read up to pageSize events
+     */
+    void fetchPulledEvents(@NonNull Set<String> largeAccounts, @Nullable Date newest, @Nullable Date oldest, int pageSize, @NonNull QueryScheduler.Priority priority, @NonNull OnSuccessListener<List<MoodEvent>> onSuccessListener) {
+        List<DocumentReference> authorRefs = new ArrayList<>();
+        for (String largeAccount : largeAccounts) {
+            authorRefs.add(participantRepository.getParticipantRef(largeAccount));
+        }
+        if (authorRefs.isEmpty()) {
+            onSuccessListener.onSuccess(new ArrayList<>());
+            return;
+        }
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (List<DocumentReference> chunk : BatchUtils.partition(authorRefs, MAX_WHERE_IN_SIZE)) {
+            Query query = getMoodEventCollRef()
+                    .whereIn("participantRef", chunk)
+                    .orderBy("timestamp", Query.Direction.DESCENDING);
+            if (newest != null) {
+                query = query.whereLessThan("timestamp", newest);
+            }
+            Query bounded = oldest != null ? query.whereGreaterThanOrEqualTo("timestamp", oldest) : query.limit(pageSize);
+            tasks.add(queryScheduler.schedule(priority, bounded::get));
+        }
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(t -> onSuccessListener.onSuccess(collectEvents(tasks)));
+    }
+
+    /**
+     * Collects the mood events of all successful query tasks, setting their ids
+     */
+    private List<MoodEvent> collectEvents(@NonNull List<Task<QuerySnapshot>> tasks) {
+        List<MoodEvent> moodEvents = new ArrayList<>();
+        for (Task<QuerySnapshot> task : tasks) {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e(TAG, "Failed to fetch a chunk of mood events", task.getException());
+                continue;
+            }
+            for (DocumentSnapshot doc : task.getResult().getDocuments()) {
+                MoodEvent event = doc.toObject(MoodEvent.class);
+                if (event != null) {
+                    event.setId(doc.getId());
+                    moodEvents.add(event);
+                }
+            }
+        }
+        return moodEvents;
+    }
+
+    /**
+     * Merges inbox and pulled mood events into a single feed, newest first, without duplicates
+     */
+    List<MoodEvent> mergeFeed(@NonNull List<MoodEvent> inboxEvents, @NonNull List<MoodEvent> pulledEvents) {
+        Map<String, MoodEvent> byId = new HashMap<>();
+        for (MoodEvent event : inboxEvents) {
+            byId.put(event.getId(), event);
+        }
+        for (MoodEvent event : pulledEvents) {
+            byId.put(event.getId(), event);
+        }
+        List<MoodEvent> feed = new ArrayList<>(byId.values());
+        feed.sort(Comparator.reverseOrder());
+        return feed;
+    }
+
+    /**
+     * Fetches the latest located mood event of each participant that the given participant is following,
+     * keeping those within the radius of the given location
+     *
+     * <p>
+     * The area is covered by the geohash cells of {@link GeoFireUtils#getGeoHashQueryBounds}. Each cell
+     * reads the {@code latestLocatedEvents} projection of the followed participants in "in" queries of
+     * {@link #MAX_WHERE_IN_SIZE} references each, so the cost is bounded by the number of followed
+     * participants in the area instead of the number of mood events there. The queries need a composite
+     * index on {@code participantRef} and {@code geoInfo.geohash} of {@code latestLocatedEvents}.
+     * Loaded cells are kept in the {@link GeoCellCache}, so moving the area only queries the cells that
+     * were not loaded recently. A cell is only cached once all of its chunks loaded. Failed queries are
+     * logged and skipped; the listener only fails if nothing could be loaded.
+     * </p>
      *
      * <p>
      * Referenced <a href="https://firebase.google.com/docs/firestore/solutions/geoqueries#query_geohashes">Firebase Geo-hashes</a>
      * </p>
      *
      * @param username          username of the participant
-     * @param location          current location of the user
+     * @param location          center of the area to search
      * @param radius            radius of the area to search for mood events, in kilometers
      * @param onSuccessListener listener to be called when the mood events are successfully fetched
      * @param onFailureListener listener to be called when the mood events cannot be fetched
      */
     public void fetchForInRadiusEventsFromFollowing(@NonNull String username, @NonNull Location location, double radius, @NonNull OnSuccessListener<List<MoodEvent>> onSuccessListener, OnFailureListener onFailureListener) {
         GeoLocation center = new GeoLocation(location.getLatitude(), location.getLongitude());
-        // Query all the bounds for the given location and radius
-        List<GeoQueryBounds> bounds = GeoFireUtils.getGeoHashQueryBounds(center, radius * 1000);
-        final List<Task<QuerySnapshot>> tasks = new ArrayList<>();
-        for (GeoQueryBounds b : bounds) {
-            Query q = getMoodEventCollRef().orderBy("geoInfo.geohash").startAt(b.startHash).endAt(b.endHash);
-            tasks.add(q.get());
-        }
+        double radiusInM = radius * 1000;
+        OnFailureListener failureListener = onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to fetch mood events in radius", e);
+        fetchFollowingForMap(username, following -> {
+            if (following.isEmpty()) {
+                onSuccessListener.onSuccess(new ArrayList<>());
+                return;
+            }
+            List<DocumentReference> followingRefs = new ArrayList<>();
+            for (String followingUsername : following) {
+                followingRefs.add(participantRepository.getParticipantRef(followingUsername));
+            }
 
-        // Collect all the query results together
-        Tasks.whenAllComplete(tasks).addOnCompleteListener(new OnCompleteListener<List<Task<?>>>() {
-            @Override
-            public void onComplete(@NonNull Task<List<Task<?>>> t) {
-                if (!t.isSuccessful()) {
-                    onFailureListener.onFailure(t.getException() != null ? t.getException() : new Exception("Failed to fetch mood events in radius"));
+            List<MoodEvent> candidates = new ArrayList<>();
+            Map<GeoQueryBounds, List<Task<QuerySnapshot>>> cellTasks = new HashMap<>();
+            List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+            for (GeoQueryBounds b : GeoFireUtils.getGeoHashQueryBounds(center, radiusInM)) {
+                List<MoodEvent> cached = geoCellCache.getCell(username, b.startHash, b.endHash);
+                if (cached != null) {
+                    candidates.addAll(cached);
+                    continue;
+                }
+                List<Task<QuerySnapshot>> chunkTasks = new ArrayList<>();
+                for (List<DocumentReference> chunk : BatchUtils.partition(followingRefs, MAX_WHERE_IN_SIZE)) {
+                    chunkTasks.add(queryScheduler.schedule(QueryScheduler.Priority.VISIBLE, () -> getLatestLocatedCollRef()
+                            .whereIn("participantRef", chunk)
+                            .orderBy("geoInfo.geohash")
+                            .startAt(b.startHash)
+                            .endAt(b.endHash)
+                            .get()));
                 }
-                List<MoodEvent> matchingDocs = new ArrayList<>();
-                for (Task<QuerySnapshot> task : tasks) {
-                    QuerySnapshot snap = task.getResult();
-                    for (DocumentSnapshot doc : snap.getDocuments()) {
-                        double lat = doc.getDouble("geoInfo.latitude");
-                        double lng = doc.getDouble("geoInfo.longitude");
-
-                        GeoLocation docLocation = new GeoLocation(lat, lng);
-                        double distanceInM = GeoFireUtils.getDistanceBetween(docLocation, center);
-                        if (distanceInM <= radius && !Objects.requireNonNull(doc.get("participantRef")).equals(participantRepository.getParticipantRef(username))) {
-                            matchingDocs.add(doc.toObject(MoodEvent.class));
+                cellTasks.put(b, chunkTasks);
+                tasks.addAll(chunkTasks);
+            }
+
+            Tasks.whenAllComplete(tasks).addOnCompleteListener(t -> {
+                Exception failure = null;
+                int failed = 0;
+                for (Map.Entry<GeoQueryBounds, List<Task<QuerySnapshot>>> cell : cellTasks.entrySet()) {
+                    List<MoodEvent> cellEvents = new ArrayList<>();
+                    boolean complete = true;
+                    for (Task<QuerySnapshot> task : cell.getValue()) {
+                        if (!task.isSuccessful() || task.getResult() == null) {
+                            Log.e(TAG, "Failed to fetch a cell of latest located mood events", task.getException());
+                            failure = task.getException();
+                            failed++;
+                            complete = false;
+                            continue;
                         }
+                        cellEvents.addAll(task.getResult().toObjects(MoodEvent.class));
+                    }
+                    // Only complete cells are cached, so the missing chunks are retried next time
+                    if (complete) {
+                        geoCellCache.putCell(username, cell.getKey().startHash, cell.getKey().endHash, cellEvents);
+                    }
+                    candidates.addAll(cellEvents);
+                }
+                if (!tasks.isEmpty() && failed == tasks.size() && candidates.isEmpty()) {
+                    failureListener.onFailure(failure != null ? failure : new Exception("Failed to fetch mood events in radius"));
+                    return;
+                }
 
+                // A participant may appear in a cached cell and a fresh one after moving, keep the newest
+                Map<String, MoodEvent> inRadius = new HashMap<>();
+                for (MoodEvent event : candidates) {
+                    GeoLocation eventLocation = getGeoLocation(event);
+                    if (event.getParticipantRef() == null || eventLocation == null
+                            || GeoFireUtils.getDistanceBetween(eventLocation, center) > radiusInM) {
+                        continue;
+                    }
+                    MoodEvent existing = inRadius.get(event.getParticipantRef().getId());
+                    if (existing == null || event.compareTo(existing) > 0) {
+                        inRadius.put(event.getParticipantRef().getId(), event);
                     }
                 }
+                onSuccessListener.onSuccess(new ArrayList<>(inRadius.values()));
+            });
+        }, failureListener);
+    }
+
+    /**
+     * Fetches the following list of a participant for map queries, from the {@link GeoCellCache} if it
+     * was fetched recently
+     */
+    private void fetchFollowingForMap(@NonNull String username, @NonNull OnSuccessListener<List<String>> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        List<String> cached = geoCellCache.getFollowing(username);
+        if (cached != null) {
+            onSuccessListener.onSuccess(cached);
+            return;
+        }
+        participantRepository.fetchFollowing(username, following -> {
+            List<String> followingList = following != null ? following : new ArrayList<>();
+            geoCellCache.putFollowing(username, followingList);
+            onSuccessListener.onSuccess(followingList);
+        }, onFailureListener);
+    }
 
-                participantRepository.fetchFollowing(username, following -> {
-                    Set<String> followingSet = new HashSet<>(following);
-                    List<MoodEvent> filteredByFollowing = new ArrayList<>();
-                    for (MoodEvent event : matchingDocs) {
-                        if (followingSet.contains(event.getParticipantRef().getId())) {
-                            filteredByFollowing.add(event);
+    /**
+     * Rebuilds the latest located mood event projection of a participant from their mood events. Used
+     * when the projected mood event is deleted or loses its location, and to backfill the projection of
+     * participants whose mood events were created before it existed.
+     *
+     * @param username          The username of the participant whose projection is rebuilt
+     * @param onSuccessListener The listener to be called when the projection is rebuilt
+     * @param onFailureListener The listener to be called when the projection cannot be rebuilt
+     */
+    public void rebuildLatestLocatedEvent(@NonNull String username, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
+        OnFailureListener failureListener = onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to rebuild the latest located mood event of " + username, e);
+        getMoodEventCollRef()
+                .whereEqualTo("participantRef", participantRepository.getParticipantRef(username))
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                        MoodEvent event = doc.toObject(MoodEvent.class);
+                        if (event != null && getGeoLocation(event) != null) {
+                            getLatestLocatedCollRef().document(username).set(toLocatedProjection(event))
+                                    .addOnSuccessListener(onSuccessListener)
+                                    .addOnFailureListener(failureListener);
+                            return;
                         }
                     }
+                    getLatestLocatedCollRef().document(username).delete()
+                            .addOnSuccessListener(onSuccessListener)
+                            .addOnFailureListener(failureListener);
+                })
+                .addOnFailureListener(failureListener);
+    }
 
-                    Map<String, MoodEvent> mostRecentByUser = new HashMap<>();
-                    for (MoodEvent event : filteredByFollowing) {
-                        String user = event.getParticipantRef().getId();
-                        if (!mostRecentByUser.containsKey(user) || event.getTimestamp().after(mostRecentByUser.get(user).getTimestamp())) {
-                            mostRecentByUser.put(user, event);
-                        }
+    /**
+     * Keeps the latest located mood event projection of the author in sync after the given mood event
+     * was written or deleted
+     *
+     * @param moodEvent The mood event that was written or deleted
+     * @param deleted   Whether the mood event was deleted
+     */
+    private void syncLatestLocatedEvent(@NonNull MoodEvent moodEvent, boolean deleted) {
+        if (moodEvent.getParticipantRef() == null) {
+            return;
+        }
+        if (deleted && getGeoLocation(moodEvent) == null) {
+            // A mood event without a location is never the projected one
+            return;
+        }
+        String author = moodEvent.getParticipantRef().getId();
+        boolean located = !deleted && getGeoLocation(moodEvent) != null;
+        if (located && moodEvent.getTimestamp() == null) {
+            // A new mood event is always the latest one of its author
+            writeLatestLocatedEvent(author, moodEvent);
+            return;
+        }
+        getLatestLocatedCollRef().document(author).get()
+                .addOnSuccessListener(doc -> {
+                    MoodEvent current = doc.exists() ? doc.toObject(MoodEvent.class) : null;
+                    boolean isCurrent = current != null && Objects.equals(current.getId(), moodEvent.getId());
+                    if (located && (current == null || isCurrent || moodEvent.compareTo(current) > 0)) {
+                        writeLatestLocatedEvent(author, moodEvent);
+                    } else if (!located && isCurrent) {
+                        rebuildLatestLocatedEvent(author, aVoid -> {}, null);
                     }
-                    onSuccessListener.onSuccess(new ArrayList<>(mostRecentByUser.values()));
-                }, onFailureListener);
-            }
-        });
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to read the latest located mood event of " + author, e));
+    }
+
+    private void writeLatestLocatedEvent(@NonNull String author, @NonNull MoodEvent moodEvent) {
+        getLatestLocatedCollRef().document(author).set(toLocatedProjection(moodEvent))
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to write the latest located mood event of " + author, e));
+    }
+
+    /**
+     * Returns a copy of the mood event for the latest located projection, without its attached image
+     */
+    private static MoodEvent toLocatedProjection(@NonNull MoodEvent moodEvent) {
+        MoodEvent projection = new MoodEvent();
+        projection.setId(moodEvent.getId());
+        projection.setTitle(moodEvent.getTitle());
+        projection.setTimestamp(moodEvent.getTimestamp());
+        projection.setReason(moodEvent.getReason());
+        projection.setGeoInfo(moodEvent.getGeoInfo());
+        projection.setParticipantRef(moodEvent.getParticipantRef());
+        projection.setEmotionalState(moodEvent.getEmotionalState());
+        projection.setSocialSituation(moodEvent.getSocialSituation());
+        projection.setTrigger(moodEvent.getTrigger());
+        projection.setAttachedImageHash(moodEvent.getAttachedImageHash());
+        projection.setAttachedImageListHash(moodEvent.getAttachedImageListHash());
+        projection.setAttachedImageBlurHash(moodEvent.getAttachedImageBlurHash());
+        return projection;
+    }
+
+    /**
+     * Returns the location of the mood event, or null if it has none
+     */
+    @Nullable
+    private static GeoLocation getGeoLocation(@NonNull MoodEvent moodEvent) {
+        Map<String, Object> geoInfo = moodEvent.getGeoInfo();
+        if (geoInfo == null || !(geoInfo.get("latitude") instanceof Number) || !(geoInfo.get("longitude") instanceof Number)) {
+            return null;
+        }
+        return new GeoLocation(((Number) geoInfo.get("latitude")).doubleValue(), ((Number) geoInfo.get("longitude")).doubleValue());
     }
 
     /**
@@ -217,9 +805,15 @@ public class MoodEventRepository {
      * @param onFailureListener The listener to be called when the mood event cannot be added
      */
     public void addMoodEvent(@NonNull MoodEvent moodEvent, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
-        getMoodEventCollRef().document(moodEvent.getId()).set(moodEvent)
-                .addOnSuccessListener(onSuccessListener)
-                .addOnFailureListener(onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to add mood event: " + moodEvent, e));
+        OnFailureListener failureListener = onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to add mood event: " + moodEvent, e);
+        storeAttachedImage(moodEvent, () -> getMoodEventCollRef().document(moodEvent.getId()).set(moodEvent)
+                .addOnSuccessListener(aVoid -> {
+                    fanOutToFollowers(moodEvent, (batch, entryRef) ->
+                            batch.set(entryRef, new FeedEntry(moodEvent, getMoodEventCollRef().document(moodEvent.getId()))));
+                    syncLatestLocatedEvent(moodEvent, false);
+                    onSuccessListener.onSuccess(aVoid);
+                })
+                .addOnFailureListener(failureListener), failureListener);
     }
 
     /**
@@ -231,7 +825,11 @@ public class MoodEventRepository {
      */
     public void deleteMoodEvent(@NonNull MoodEvent moodEvent, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
         getMoodEventCollRef().document(moodEvent.getId()).delete()
-                .addOnSuccessListener(onSuccessListener)
+                .addOnSuccessListener(aVoid -> {
+                    fanOutToFollowers(moodEvent, WriteBatch::delete);
+                    syncLatestLocatedEvent(moodEvent, true);
+                    onSuccessListener.onSuccess(aVoid);
+                })
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to delete mood event: " + moodEvent, e));
     }
 
@@ -248,9 +846,88 @@ public class MoodEventRepository {
             onFailureListener.onFailure(new IllegalArgumentException("Mood event ID cannot be null"));
             return;
         }
-        getMoodEventCollRef().document(moodEvent.getId()).set(moodEvent)
-                .addOnSuccessListener(onSuccessListener)
-                .addOnFailureListener(onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to update mood event: " + moodEvent.getId(), e));
+        OnFailureListener failureListener = onFailureListener != null ? onFailureListener : e -> Log.e(TAG, "Failed to update mood event: " + moodEvent.getId(), e);
+        storeAttachedImage(moodEvent, () -> getMoodEventCollRef().document(moodEvent.getId()).set(moodEvent)
+                .addOnSuccessListener(aVoid -> {
+                    fanOutToFollowers(moodEvent, (batch, entryRef) ->
+                            batch.set(entryRef, new FeedEntry(moodEvent, getMoodEventCollRef().document(moodEvent.getId()))));
+                    syncLatestLocatedEvent(moodEvent, false);
+                    onSuccessListener.onSuccess(aVoid);
+                })
+                .addOnFailureListener(failureListener), failureListener);
+    }
+
+    /**
+     * Moves a newly attached image of a mood event into the images collection before the mood event
+     * is written, leaving the hashes of its full and list-size versions and its BlurHash on the mood
+     * event. Mood events without a new image
+     * are written straight away.
+     *
+     * @param moodEvent         The mood event to be written
+     * @param write             The write of the mood event
+     * @param onFailureListener The listener to be called when the image cannot be stored
+     */
+    private void storeAttachedImage(@NonNull MoodEvent moodEvent, @NonNull Runnable write, @NonNull OnFailureListener onFailureListener) {
+        String image = moodEvent.getAttachedImage();
+        if (image == null || image.isEmpty()) {
+            write.run();
+            return;
+        }
+        byte[] bytes = ImageHandler.base64ToBytes(image);
+        if (bytes == null) {
+            onFailureListener.onFailure(new IllegalArgumentException("Attached image is not valid base64"));
+            return;
+        }
+        imageRepository.uploadImage(bytes, stored -> {
+            moodEvent.setAttachedImageHash(stored.getHash());
+            moodEvent.setAttachedImageListHash(stored.getListHash());
+            moodEvent.setAttachedImageBlurHash(stored.getBlurHash());
+            moodEvent.setAttachedImage(null);
+            write.run();
+        }, onFailureListener);
+    }
+
+    /**
+     * Applies the given write to the feed entry of the mood event in the inbox of every follower of
+     * its author. Writes are committed in batches of {@link #MAX_BATCH_WRITES}. Authors with more than
+     * {@link #FANOUT_FOLLOWER_LIMIT} followers are skipped, as their followers pull their events instead.
+     *
+     * @param moodEvent The mood event whose feed entries are written
+     * @param write     The write to apply to each feed entry
+     */
+    private void fanOutToFollowers(@NonNull MoodEvent moodEvent, @NonNull BiConsumer<WriteBatch, DocumentReference> write) {
+        if (moodEvent.getParticipantRef() == null) {
+            return;
+        }
+        String author = moodEvent.getParticipantRef().getId();
+        participantRepository.fetchFollowers(author, followers -> {
+            // Followers find large accounts by this count, as follower counts are sharded
+            participantRepository.recordFanOutFollowerCount(author, followers.size(), FANOUT_FOLLOWER_LIMIT);
+            if (followers.isEmpty() || followers.size() > FANOUT_FOLLOWER_LIMIT) {
+                return;
+            }
+            for (List<String> chunk : BatchUtils.partition(followers, MAX_BATCH_WRITES)) {
+                WriteBatch batch = firebaseService.getDb().batch();
+                for (String follower : chunk) {
+                    write.accept(batch, getFeedCollRef(follower).document(moodEvent.getId()));
+                }
+                batch.commit().addOnFailureListener(e -> Log.e(TAG, "Failed to fan out mood event " + moodEvent.getId() + " to followers of " + author, e));
+            }
+        }, e -> Log.e(TAG, "Failed to fetch followers of " + author + " to fan out mood event " + moodEvent.getId(), e));
+    }
+
+    /**
+     * Deletes the given feed entries in a single batch
+     */
+    private void deleteFeedEntries(@NonNull List<DocumentReference> entryRefs) {
+        if (entryRefs.isEmpty()) {
+            return;
+        }
+        WriteBatch batch = firebaseService.getDb().batch();
+        for (DocumentReference entryRef : entryRefs) {
+            batch.delete(entryRef);
+        }
+        batch.commit().addOnFailureListener(e -> Log.e(TAG, "Failed to delete stale feed entries", e));
     }
 
     /**
@@ -0,0 +1,147 @@
+package com.example.bread.repository;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bread.model.Participant;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A singleton in-memory cache of base participants shared by every screen, so that an author shown in
+ * many rows is only read once. Participants expire after {@link #TTL_MS} and at most
+ * {@link #MAX_PARTICIPANTS} are kept, evicting the least recently used. Lookups of a participant that
+ * is already being read join that read instead of starting another one.
+ */
+public class ParticipantCache {
+    public static final long TTL_MS = 5 * 60 * 1000;
+    public static final int MAX_PARTICIPANTS = 200;
+    private static ParticipantCache instance;
+
+    /**
+     * The listeners of a lookup waiting for a read in flight
+     */
+    static class Waiter {
+        final OnSuccessListener<Participant> onSuccessListener;
+        final OnFailureListener onFailureListener;
+
+        Waiter(@NonNull OnSuccessListener<Participant> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+            this.onSuccessListener = onSuccessListener;
+            this.onFailureListener = onFailureListener;
+        }
+    }
+
+    private static class Entry {
+        final Participant participant;
+        final long loadedAt;
+
+        Entry(Participant participant, long loadedAt) {
+            this.participant = participant;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - loadedAt > TTL_MS;
+        }
+    }
+
+    private final Map<String, Entry> participants = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_PARTICIPANTS;
+        }
+    };
+    private final Map<String, List<Waiter>> inFlight = new HashMap<>();
+    // Reads in flight that were invalidated, whose result must not be cached
+    private final Set<String> staleReads = new HashSet<>();
+
+    ParticipantCache() {
+    }
+
+    public static synchronized ParticipantCache getInstance() {
+        if (instance == null) {
+            instance = new ParticipantCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a cached participant. The participant is shared and must not be modified.
+     *
+     * @return the participant, or null if not cached or expired
+     */
+    @Nullable
+    synchronized Participant get(@NonNull String username) {
+        Entry entry = participants.get(username);
+        if (entry == null || entry.isExpired()) {
+            participants.remove(username);
+            return null;
+        }
+        return entry.participant;
+    }
+
+    synchronized void put(@NonNull String username, @NonNull Participant participant) {
+        participants.put(username, new Entry(participant, SystemClock.elapsedRealtime()));
+        staleReads.remove(username);
+    }
+
+    /**
+     * Drops a participant after it was written, including the result of a read already in flight
+     */
+    synchronized void invalidate(@NonNull String username) {
+        participants.remove(username);
+        if (inFlight.containsKey(username)) {
+            staleReads.add(username);
+        }
+    }
+
+    /**
+     * Registers a lookup of a participant that is not cached
+     *
+     * @return true if the caller must start the read, false if it joined a read already in flight
+     */
+    synchronized boolean join(@NonNull String username, @NonNull Waiter waiter) {
+        List<Waiter> waiters = inFlight.get(username);
+        if (waiters != null) {
+            waiters.add(waiter);
+            return false;
+        }
+        waiters = new ArrayList<>();
+        waiters.add(waiter);
+        inFlight.put(username, waiters);
+        return true;
+    }
+
+    /**
+     * Completes the read of a participant, caching it unless it was invalidated in the meantime
+     *
+     * @param participant the participant read, or null if it does not exist or the read failed
+     * @return the lookups that were waiting for the read
+     */
+    synchronized List<Waiter> complete(@NonNull String username, @Nullable Participant participant) {
+        List<Waiter> waiters = inFlight.remove(username);
+        boolean stale = staleReads.remove(username);
+        if (participant != null && !stale) {
+            participants.put(username, new Entry(participant, SystemClock.elapsedRealtime()));
+        }
+        return waiters != null ? waiters : Collections.emptyList();
+    }
+
+    /**
+     * Drops all cached participants
+     */
+    public synchronized void clear() {
+        participants.clear();
+    }
+}
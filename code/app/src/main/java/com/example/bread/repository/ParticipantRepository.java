@@ -1,25 +1,39 @@
 package com.example.bread.repository;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.example.bread.firebase.FirebaseService;
 import com.example.bread.model.FollowRequest;
 import com.example.bread.model.Participant;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.Filter;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Repository class for handling participants in the database
@@ -27,6 +41,24 @@ import java.util.Objects;
 public class ParticipantRepository {
     private final FirebaseService firebaseService;
     private static final String TAG = "ParticipantRepository";
+    private final ParticipantCache participantCache = ParticipantCache.getInstance();
+    // Firestore allows at most 30 values in a whereIn filter
+    private static final int BATCH_SIZE = 30;
+    // An "in" filter combined with a two-way "or" counts twice against the 30 disjunctions Firestore allows
+    private static final int LARGE_ACCOUNT_BATCH_SIZE = 15;
+    // Whether each author was last recorded above the fan-out limit, so the count is only written when that changes
+    private static final Map<String, Boolean> recordedLargeAccounts = new HashMap<>();
+    // Participants queued by the lookups of one frame, read together
+    private final Set<String> pendingUsernames = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    private Handler mainHandler;
+    // Shared by all instances so that their cached counts agree
+    private static final ShardedCounter followerCounter = new ShardedCounter("followerCount");
+    private static final ShardedCounter followingCounter = new ShardedCounter("followingCount");
+    private static FollowGraph followGraph;
+    private static FollowSuggestions followSuggestions;
+    // The most participants a username search returns
+    public static final int SEARCH_LIMIT = 20;
 
     // List types enum
     public enum ListType {
@@ -47,29 +79,22 @@ public class ParticipantRepository {
     }
 
     /**
-     * Fetches the base participant object from firebase without fetching followers and following
+     * Fetches the base participant object from firebase without fetching followers and following.
+     * Participants are served from the shared {@link ParticipantCache} when possible, and must not be
+     * modified. Participants requested within one frame are read together with a batched query.
      *
      * @param username          The username of the participant to fetch
      * @param onSuccessListener The listener to be called when the participant is successfully fetched
      * @param onFailureListener The listener to be called when the participant cannot be fetched
      */
     public void fetchBaseParticipant(@NonNull String username, @NonNull OnSuccessListener<Participant> onSuccessListener, OnFailureListener onFailureListener) {
-        getParticipantCollRef().document(username).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Participant participant = documentSnapshot.toObject(Participant.class);
-                        onSuccessListener.onSuccess(participant);
-                    } else {
-                        Log.e(TAG, "Participant with username: " + username + " does not exist");
-                        onSuccessListener.onSuccess(null);
-                    }
-                })
-                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                        Log.e(TAG, "Failed to fetch participant with username: " + username, e));
+        fetchCachedParticipant(getParticipantRef(username), onSuccessListener, onFailureListener != null ? onFailureListener : e ->
+                Log.e(TAG, "Failed to fetch participant with username: " + username, e));
     }
 
     /**
-     * Fetches the participant object from firebase with followers and following
+     * Fetches the participant object from firebase with followers and following. Screens that only
+     * need the counts should use {@link #fetchBaseParticipant} instead, which reads no lists.
      *
      * @param username          The username of the participant to fetch
      * @param onSuccessListener The listener to be called when the participant is successfully fetched
@@ -91,24 +116,112 @@ public class ParticipantRepository {
     }
 
     /**
-     * Fetches the base participant object from firebase with the given reference
+     * Fetches the base participant object from firebase with the given reference. Participants are
+     * served from the shared {@link ParticipantCache} when possible, and must not be modified.
+     * Participants requested within one frame are read together with a batched query.
      *
      * @param participantRef    The reference to the participant to fetch
      * @param onSuccessListener The listener to be called when the participant is successfully fetched
      * @param onFailureListener The listener to be called when the participant cannot be fetched
      */
     public void fetchParticipantByRef(@NonNull DocumentReference participantRef, @NonNull OnSuccessListener<Participant> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
-        participantRef.get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Participant participant = documentSnapshot.toObject(Participant.class);
-                        onSuccessListener.onSuccess(participant);
-                    } else {
-                        Log.e(TAG, "Participant with reference: " + participantRef + " does not exist");
-                        onSuccessListener.onSuccess(null);
+        fetchCachedParticipant(participantRef, onSuccessListener, onFailureListener);
+    }
+
+    /**
+     * Returns a participant from the shared cache without reading it, for example to bind a row
+     * immediately
+     *
+     * @param username The username of the participant
+     * @return The cached participant, which must not be modified, or null if it is not cached
+     */
+    @Nullable
+    public Participant getCachedParticipant(@NonNull String username) {
+        return participantCache.get(username);
+    }
+
+    /**
+     * Drops a participant from the shared cache, for example after updating their document
+     *
+     * @param username The username of the participant
+     */
+    public void invalidateCachedParticipant(@NonNull String username) {
+        participantCache.invalidate(username);
+    }
+
+    /**
+     * Serves a participant from the cache, or queues it for the next batched read. Concurrent lookups
+     * of the same participant share one read.
+     */
+    private void fetchCachedParticipant(@NonNull DocumentReference participantRef, @NonNull OnSuccessListener<Participant> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        String username = participantRef.getId();
+        Participant cached = participantCache.get(username);
+        if (cached != null) {
+            onSuccessListener.onSuccess(cached);
+            return;
+        }
+        if (!participantCache.join(username, new ParticipantCache.Waiter(onSuccessListener, onFailureListener))) {
+            return;
+        }
+        synchronized (pendingUsernames) {
+            pendingUsernames.add(username);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+            if (mainHandler == null) {
+                mainHandler = new Handler(Looper.getMainLooper());
+            }
+        }
+        // Rows bound in the same frame post their lookups before this runs
+        mainHandler.post(this::flushPendingParticipants);
+    }
+
+    /**
+     * Reads the participants queued since the last flush, {@link #BATCH_SIZE} per query
+     */
+    private void flushPendingParticipants() {
+        List<String> usernames;
+        synchronized (pendingUsernames) {
+            usernames = new ArrayList<>(pendingUsernames);
+            pendingUsernames.clear();
+            flushScheduled = false;
+        }
+        for (int i = 0; i < usernames.size(); i += BATCH_SIZE) {
+            fetchParticipantBatch(new ArrayList<>(usernames.subList(i, Math.min(i + BATCH_SIZE, usernames.size()))));
+        }
+    }
+
+    /**
+     * Reads a batch of participants with one query and completes the lookups of each of them
+     *
+     * @param usernames The usernames of the participants, at most {@link #BATCH_SIZE}
+     */
+    private void fetchParticipantBatch(@NonNull List<String> usernames) {
+        getParticipantCollRef().whereIn(FieldPath.documentId(), usernames).get()
+                .addOnSuccessListener(querySnapshot -> {
+                    Map<String, Participant> participants = new HashMap<>();
+                    for (DocumentSnapshot documentSnapshot : querySnapshot.getDocuments()) {
+                        participants.put(documentSnapshot.getId(), documentSnapshot.toObject(Participant.class));
+                    }
+                    for (String username : usernames) {
+                        Participant participant = participants.get(username);
+                        if (participant == null) {
+                            Log.e(TAG, "Participant with username: " + username + " does not exist");
+                        }
+                        for (ParticipantCache.Waiter waiter : participantCache.complete(username, participant)) {
+                            waiter.onSuccessListener.onSuccess(participant);
+                        }
                     }
                 })
-                .addOnFailureListener(onFailureListener);
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to fetch " + usernames.size() + " participants", e);
+                    for (String username : usernames) {
+                        for (ParticipantCache.Waiter waiter : participantCache.complete(username, null)) {
+                            waiter.onFailureListener.onFailure(e);
+                        }
+                    }
+                });
     }
 
     /**
@@ -122,21 +235,24 @@ public class ParticipantRepository {
     }
 
     /**
-     * Fetches the followers and following of the given participant
+     * Fetches the followers and following of the given participant. Both lists are read concurrently;
+     * the follower and following counts of the participant are the counters stored on its document.
      *
      * @param participant       The participant to fetch followers and following for
      * @param onSuccessListener The listener to be called when the followers and following are successfully fetched
      * @param onFailureListener The listener to be called when the followers and following cannot be fetched
      */
     public void fetchFollowersAndFollowing(@NonNull Participant participant, @NonNull OnSuccessListener<Participant> onSuccessListener, OnFailureListener onFailureListener) {
-        fetchFollowing(participant.getUsername(), following -> {
-            participant.setFollowing(following);
-            fetchFollowers(participant.getUsername(), followers -> {
-                participant.setFollowers(followers);
-                onSuccessListener.onSuccess(participant);
-            }, onFailureListener);
-        }, onFailureListener != null ? onFailureListener : e ->
-                Log.e(TAG, "Failed to fetch following for participant: " + participant.getUsername(), e));
+        Task<List<String>> followingTask = fetchFollowUsernames(participant.getUsername(), "following");
+        Task<List<String>> followersTask = fetchFollowUsernames(participant.getUsername(), "followers");
+        Tasks.whenAll(followingTask, followersTask)
+                .addOnSuccessListener(unused -> {
+                    participant.setFollowing(followingTask.getResult());
+                    participant.setFollowers(followersTask.getResult());
+                    onSuccessListener.onSuccess(participant);
+                })
+                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
+                        Log.e(TAG, "Failed to fetch followers and following for participant: " + participant.getUsername(), e));
     }
 
     /**
@@ -147,16 +263,8 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when the followers cannot be fetched
      */
     public void fetchFollowers(@NonNull String username, @NonNull OnSuccessListener<List<String>> onSuccessListener, OnFailureListener onFailureListener) {
-        getParticipantCollRef().document(username).collection("followers").get()
-                .addOnSuccessListener(followersSnapshot -> {
-                    List<String> followers = new ArrayList<>();
-                    for (DocumentSnapshot doc : followersSnapshot) {
-                        followers.add(doc.getString("username"));
-                    }
-                    // Update follower count in participant document
-                    updateFollowerCount(username, followers.size());
-                    onSuccessListener.onSuccess(followers);
-                })
+        fetchFollowUsernames(username, "followers")
+                .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
                         Log.e(TAG, "Failed to fetch followers for participant: " + username, e));
     }
@@ -169,34 +277,137 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when the following cannot be fetched
      */
     public void fetchFollowing(@NonNull String username, @NonNull OnSuccessListener<List<String>> onSuccessListener, OnFailureListener onFailureListener) {
-        getParticipantCollRef().document(username).collection("following").get()
-                .addOnSuccessListener(followingSnapshot -> {
-                    List<String> following = new ArrayList<>();
-                    for (DocumentSnapshot doc : followingSnapshot) {
-                        following.add(doc.getString("username"));
-                    }
-                    // Update following count in participant document
-                    updateFollowingCount(username, following.size());
-                    onSuccessListener.onSuccess(following);
-                })
+        fetchFollowUsernames(username, "following")
+                .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
                         Log.e(TAG, "Failed to fetch following for participant: " + username, e));
     }
 
     /**
-     * Update follower count in the participant document
+     * Reads the usernames in a followers or following subcollection. This only reads; the stored
+     * counters are kept up to date by the writes that follow and unfollow.
      */
-    private void updateFollowerCount(String username, int count) {
-        getParticipantCollRef().document(username).update("followerCount", count)
-                .addOnFailureListener(e -> Log.e(TAG, "Failed to update follower count for " + username, e));
+    Task<List<String>> fetchFollowUsernames(@NonNull String username, @NonNull String collection) {
+        return getParticipantCollRef().document(username).collection(collection).get()
+                .onSuccessTask(snapshot -> {
+                    List<String> usernames = new ArrayList<>();
+                    for (DocumentSnapshot doc : snapshot) {
+                        usernames.add(doc.getString("username"));
+                    }
+                    return Tasks.forResult(usernames);
+                });
     }
 
     /**
-     * Update following count in the participant document
+     * Fetches the follower count of the given participant. The count is the follower count stored on
+     * the participant document before counts were sharded, plus the sum of the follower count shards.
+     *
+     * @param participant       The participant to fetch the follower count for
+     * @param onSuccessListener The listener to be called with the follower count
+     * @param onFailureListener The listener to be called when the follower count cannot be fetched
+     */
+    public void fetchFollowerCount(@NonNull Participant participant, @NonNull OnSuccessListener<Long> onSuccessListener, OnFailureListener onFailureListener) {
+        followerCounter.read(getParticipantRef(participant.getUsername()), sum -> onSuccessListener.onSuccess(participant.getFollowerCount() + sum),
+                onFailureListener != null ? onFailureListener : e ->
+                        Log.e(TAG, "Failed to fetch follower count for participant: " + participant.getUsername(), e));
+    }
+
+    /**
+     * Fetches the following count of the given participant. The count is the following count stored on
+     * the participant document before counts were sharded, plus the sum of the following count shards.
+     *
+     * @param participant       The participant to fetch the following count for
+     * @param onSuccessListener The listener to be called with the following count
+     * @param onFailureListener The listener to be called when the following count cannot be fetched
      */
-    private void updateFollowingCount(String username, int count) {
-        getParticipantCollRef().document(username).update("followingCount", count)
-                .addOnFailureListener(e -> Log.e(TAG, "Failed to update following count for " + username, e));
+    public void fetchFollowingCount(@NonNull Participant participant, @NonNull OnSuccessListener<Long> onSuccessListener, OnFailureListener onFailureListener) {
+        followingCounter.read(getParticipantRef(participant.getUsername()), sum -> onSuccessListener.onSuccess(participant.getFollowingCount() + sum),
+                onFailureListener != null ? onFailureListener : e ->
+                        Log.e(TAG, "Failed to fetch following count for participant: " + participant.getUsername(), e));
+    }
+
+    /**
+     * Records on the participant document how many followers a mood event of theirs was fanned out to,
+     * so that {@link #fetchLargeAccounts} can find large accounts without reading the sharded follower
+     * counts. Only the participant writes this, and only when they cross the given limit, so that the
+     * participant document is not written on every mood event.
+     *
+     * @param username      The username of the participant
+     * @param followerCount The number of followers the participant had when fanning out
+     * @param limit         The follower count above which the participant is a large account
+     */
+    public void recordFanOutFollowerCount(@NonNull String username, int followerCount, int limit) {
+        boolean large = followerCount > limit;
+        Boolean recorded;
+        synchronized (recordedLargeAccounts) {
+            recorded = recordedLargeAccounts.get(username);
+        }
+        if (recorded != null) {
+            if (recorded != large) {
+                writeFanOutFollowerCount(username, followerCount, large);
+            }
+            return;
+        }
+        // Read what was recorded before this session once, instead of writing to find out
+        getParticipantCollRef().document(username).get()
+                .addOnSuccessListener(doc -> {
+                    Long stored = doc.getLong("fanOutFollowerCount");
+                    boolean storedLarge = stored != null && stored > limit;
+                    if (storedLarge != large) {
+                        writeFanOutFollowerCount(username, followerCount, large);
+                    } else {
+                        synchronized (recordedLargeAccounts) {
+                            recordedLargeAccounts.put(username, large);
+                        }
+                    }
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to read fan out follower count for " + username, e));
+    }
+
+    private void writeFanOutFollowerCount(@NonNull String username, int followerCount, boolean large) {
+        getParticipantCollRef().document(username).update("fanOutFollowerCount", followerCount)
+                .addOnSuccessListener(aVoid -> {
+                    synchronized (recordedLargeAccounts) {
+                        recordedLargeAccounts.put(username, large);
+                    }
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to record fan out follower count for " + username, e));
+    }
+
+    /**
+     * Fetches which of the given participants have more than the given number of followers, as last
+     * recorded by {@link #recordFanOutFollowerCount} or, for participants that have not posted since
+     * counts were sharded, by the follower count stored on their document. Only the given participants
+     * are read, {@link #LARGE_ACCOUNT_BATCH_SIZE} per query.
+     *
+     * @param usernames         The usernames of the participants to check, such as those followed
+     * @param followerCount     The follower count that participants must exceed
+     * @param onSuccessListener The listener to be called with the matching usernames
+     * @param onFailureListener The listener to be called when the usernames cannot be fetched
+     */
+    public void fetchLargeAccounts(@NonNull Collection<String> usernames, int followerCount, @NonNull OnSuccessListener<Set<String>> onSuccessListener, OnFailureListener onFailureListener) {
+        List<String> usernameList = new ArrayList<>(usernames);
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (int i = 0; i < usernameList.size(); i += LARGE_ACCOUNT_BATCH_SIZE) {
+            List<String> chunk = usernameList.subList(i, Math.min(i + LARGE_ACCOUNT_BATCH_SIZE, usernameList.size()));
+            tasks.add(getParticipantCollRef().where(Filter.and(
+                    Filter.inArray(FieldPath.documentId(), new ArrayList<>(chunk)),
+                    Filter.or(
+                            Filter.greaterThan("fanOutFollowerCount", followerCount),
+                            Filter.greaterThan("followerCount", followerCount)))).get());
+        }
+        Tasks.whenAllSuccess(tasks)
+                .addOnSuccessListener(snapshots -> {
+                    Set<String> largeAccounts = new HashSet<>();
+                    for (Object snapshot : snapshots) {
+                        for (DocumentSnapshot doc : ((QuerySnapshot) snapshot).getDocuments()) {
+                            largeAccounts.add(doc.getId());
+                        }
+                    }
+                    onSuccessListener.onSuccess(largeAccounts);
+                })
+                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
+                        Log.e(TAG, "Failed to fetch participants with more than " + followerCount + " followers", e));
     }
 
     /**
@@ -207,52 +418,52 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when the participant cannot be added
      */
     public void addParticipant(@NonNull Participant participant, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
+        participantCache.invalidate(participant.getUsername());
         getParticipantCollRef().document(participant.getUsername()).set(participant)
                 .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
                         Log.e(TAG, "Failed to add participant: " + participant, e));
     }
 
+    private DocumentReference getFollowerRef(@NonNull String username, @NonNull String followerUsername) {
+        return getParticipantRef(username).collection("followers").document(followerUsername);
+    }
+
     /**
-     * Adds a follower to the given participant
+     * Makes one participant stop following another in a single transaction: the follower and following
+     * documents, both counts, and the follow request, so that a new request can be sent. The counts are
+     * only changed if the follower document still exists, so a repeated unfollow, or an unfollow racing
+     * a removal, does not count twice.
      *
-     * @param username          The username of the participant to add the follower to
-     * @param followerUsername  The username of the follower to add
-     * @param onSuccessListener The listener to be called when the follower is successfully added
-     * @param onFailureListener The listener to be called when the follower cannot be added
-     */
-    public void addFollower(@NonNull String username, String followerUsername, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
-        Map<String, String> follower = new HashMap<>();
-        follower.put("username", followerUsername);
-        getParticipantCollRef().document(username).collection("followers").document(followerUsername).set(follower)
-                .addOnSuccessListener(aVoid -> {
-                    // Increment the follower count by 1
-                    getParticipantCollRef().document(username).update("followerCount", FieldValue.increment(1));
-                    onSuccessListener.onSuccess(aVoid);
-                })
-                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                        Log.e(TAG, "Failed to add follower: " + followerUsername + " to participant: " + username, e));
+     * @param username          The username of the participant being followed
+     * @param followerUsername  The username of the participant following
+     * @return The task of the transaction
+     */
+    private Task<Void> runUnfollowTransaction(@NonNull String username, @NonNull String followerUsername) {
+        DocumentReference followerRef = getFollowerRef(username, followerUsername);
+        return firebaseService.getDb().runTransaction((Transaction.Function<Void>) transaction -> {
+            boolean following = transaction.get(followerRef).exists();
+            transaction.delete(followerRef);
+            transaction.delete(getParticipantRef(followerUsername).collection("following").document(username));
+            transaction.delete(getParticipantRef(username).collection("followRequests").document(followerUsername));
+            if (following) {
+                followerCounter.increment(transaction, getParticipantRef(username), -1);
+                followingCounter.increment(transaction, getParticipantRef(followerUsername), -1);
+            }
+            return null;
+        }).addOnSuccessListener(result -> invalidateFollowCounts(username, followerUsername));
     }
 
     /**
-     * Adds a following to the given participant
+     * Drops the cached follower count of a participant and following count of their follower, once a
+     * transaction changing them has committed
      *
-     * @param username          The username of the participant to add the following to
-     * @param followingUsername The username of the following to add
-     * @param onSuccessListener The listener to be called when the following is successfully added
-     * @param onFailureListener The listener to be called when the following cannot be added
-     */
-    public void addFollowing(@NonNull String username, String followingUsername, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
-        Map<String, String> following = new HashMap<>();
-        following.put("username", followingUsername);
-        getParticipantCollRef().document(username).collection("following").document(followingUsername).set(following)
-                .addOnSuccessListener(aVoid -> {
-                    // Increment the following count by 1
-                    getParticipantCollRef().document(username).update("followingCount", FieldValue.increment(1));
-                    onSuccessListener.onSuccess(aVoid);
-                })
-                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                        Log.e(TAG, "Failed to add following: " + followingUsername + " to participant: " + username, e));
+     * @param username         The username of the participant being followed
+     * @param followerUsername The username of the participant following
+     */
+    private void invalidateFollowCounts(@NonNull String username, @NonNull String followerUsername) {
+        followerCounter.invalidate(getParticipantRef(username));
+        followingCounter.invalidate(getParticipantRef(followerUsername));
     }
 
     /**
@@ -300,16 +511,28 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when the request cannot be accepted
      */
     public void acceptFollowRequest(@NonNull String username, @NonNull String requestorUsername, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
-        // Update request status to accepted
-        getParticipantCollRef().document(username).collection("followRequests").document(requestorUsername)
-                .update("status", "accepted")
-                .addOnSuccessListener(aVoid -> {
-                    // Add follower relationship
-                    addFollower(username, requestorUsername, unused -> {
-                        // Add following relationship
-                        addFollowing(requestorUsername, username, onSuccessListener, onFailureListener);
-                    }, onFailureListener);
-                })
+        DocumentReference requestRef = getParticipantRef(username).collection("followRequests").document(requestorUsername);
+        DocumentReference followerRef = getFollowerRef(username, requestorUsername);
+        // Mark the request accepted and add both sides of the relationship in one transaction. Only a
+        // pending request is accepted, and the counts only change if the follower was not there yet,
+        // so accepting twice does not count twice.
+        firebaseService.getDb().runTransaction((Transaction.Function<Void>) transaction -> {
+            DocumentSnapshot request = transaction.get(requestRef);
+            boolean following = transaction.get(followerRef).exists();
+            if (!request.exists() || !"pending".equals(request.getString("status"))) {
+                return null;
+            }
+            transaction.update(requestRef, "status", "accepted");
+            if (!following) {
+                transaction.set(followerRef, Collections.singletonMap("username", requestorUsername));
+                transaction.set(getParticipantRef(requestorUsername).collection("following").document(username), Collections.singletonMap("username", username));
+                followerCounter.increment(transaction, getParticipantRef(username), 1);
+                followingCounter.increment(transaction, getParticipantRef(requestorUsername), 1);
+            }
+            return null;
+        })
+                .addOnSuccessListener(result -> invalidateFollowCounts(username, requestorUsername))
+                .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
                         Log.e(TAG, "Failed to accept follow request from: " + requestorUsername + " for: " + username, e));
     }
@@ -350,24 +573,26 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when the search fails
      */
     public void searchUsersByUsername(String usernamePrefix, @NonNull OnSuccessListener<List<Participant>> onSuccessListener, OnFailureListener onFailureListener) {
+        searchUsersByUsername(usernamePrefix)
+                .addOnSuccessListener(onSuccessListener)
+                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
+                        Log.e(TAG, "Failed to search users with prefix: " + usernamePrefix, e));
+    }
+
+    /**
+     * Searches for at most {@link #SEARCH_LIMIT} participants by username prefix; see
+     * {@link #searchUsersByUsername(String, OnSuccessListener, OnFailureListener)}
+     */
+    Task<List<Participant>> searchUsersByUsername(@NonNull String usernamePrefix) {
         String endPrefix = usernamePrefix + "\uf8ff"; // Unicode character that sorts after all other characters
 
-        getParticipantCollRef()
+        return getParticipantCollRef()
                 .whereGreaterThanOrEqualTo("username", usernamePrefix)
                 .whereLessThan("username", endPrefix)
-                .limit(20) // Limit results to avoid too many results
+                .limit(SEARCH_LIMIT) // Limit results to avoid too many results
                 .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        onSuccessListener.onSuccess(new ArrayList<>());
-                        return;
-                    }
-
-                    List<Participant> participants = queryDocumentSnapshots.toObjects(Participant.class);
-                    onSuccessListener.onSuccess(participants);
-                })
-                .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                        Log.e(TAG, "Failed to search users with prefix: " + usernamePrefix, e));
+                .onSuccessTask(queryDocumentSnapshots ->
+                        Tasks.forResult(queryDocumentSnapshots.toObjects(Participant.class)));
     }
 
     /**
@@ -407,6 +632,121 @@ public class ParticipantRepository {
                         Log.e(TAG, "Failed to check follow request from: " + fromUsername + " to: " + toUsername, e));
     }
 
+    /**
+     * Returns the follow graph of the given participant, kept up to date by snapshot listeners. The
+     * same instance is returned until another participant's graph is requested or
+     * {@link #stopFollowGraph()} is called.
+     *
+     * @param username The username of the signed-in participant
+     * @return The follow graph
+     */
+    public FollowGraph getFollowGraph(@NonNull String username) {
+        synchronized (ParticipantRepository.class) {
+            if (followGraph == null || !followGraph.getUsername().equals(username)) {
+                if (followGraph != null) {
+                    followGraph.stop();
+                }
+                followGraph = new FollowGraph(this, username);
+                followGraph.start();
+            }
+            return followGraph;
+        }
+    }
+
+    /**
+     * Stops the follow graph, for example when the participant signs out
+     */
+    public static void stopFollowGraph() {
+        synchronized (ParticipantRepository.class) {
+            if (followGraph != null) {
+                followGraph.stop();
+                followGraph = null;
+            }
+            followSuggestions = null;
+        }
+    }
+
+    /**
+     * Fetches participants to suggest to the given participant, followed by the most participants they
+     * follow. Suggestions are computed in memory and kept up to date as the participant follows and
+     * unfollows; see {@link FollowSuggestions}.
+     *
+     * @param username          The username of the signed-in participant
+     * @param limit             The maximum number of participants to suggest
+     * @param onSuccessListener The listener to be called with the suggested participants, best first
+     * @param onFailureListener The listener to be called when suggestions cannot be fetched
+     */
+    public void fetchFollowSuggestions(@NonNull String username, int limit, @NonNull OnSuccessListener<List<Participant>> onSuccessListener, OnFailureListener onFailureListener) {
+        OnFailureListener failureListener = onFailureListener != null ? onFailureListener : e ->
+                Log.e(TAG, "Failed to fetch follow suggestions for: " + username, e);
+        FollowSuggestions suggestions;
+        synchronized (ParticipantRepository.class) {
+            FollowGraph graph = getFollowGraph(username);
+            if (followSuggestions == null || followSuggestions.getFollowGraph() != graph) {
+                followSuggestions = new FollowSuggestions(this, graph);
+            }
+            suggestions = followSuggestions;
+        }
+        suggestions.fetch(limit, ranked -> {
+            if (ranked.isEmpty()) {
+                onSuccessListener.onSuccess(new ArrayList<>());
+                return;
+            }
+            // Participants are looked up together in one batched read, then put back in rank order
+            Participant[] participants = new Participant[ranked.size()];
+            int[] remaining = {ranked.size()};
+            for (int i = 0; i < ranked.size(); i++) {
+                int rank = i;
+                OnSuccessListener<Participant> onParticipant = participant -> {
+                    participants[rank] = participant;
+                    if (--remaining[0] == 0) {
+                        List<Participant> result = new ArrayList<>();
+                        for (Participant p : participants) {
+                            if (p != null) {
+                                result.add(p);
+                            }
+                        }
+                        onSuccessListener.onSuccess(result);
+                    }
+                };
+                fetchBaseParticipant(ranked.get(i).getUsername(), onParticipant, e -> onParticipant.onSuccess(null));
+            }
+        }, failureListener);
+    }
+
+    /**
+     * Query for the follow requests sent by the given participant, which are stored under the
+     * participants they were sent to
+     */
+    Query getOutgoingFollowRequestsQuery(@NonNull String username) {
+        return firebaseService.getDb().collectionGroup("followRequests").whereEqualTo("fromUsername", username);
+    }
+
+    /**
+     * Fetches the relationship of the signed-in participant with another participant. Once the follow
+     * graph has loaded this is answered from memory; until then it is read.
+     *
+     * @param username          The username of the signed-in participant
+     * @param targetUsername    The username of the other participant
+     * @param onSuccessListener The listener to be called with the relationship
+     * @param onFailureListener The listener to be called when the relationship cannot be read
+     */
+    public void fetchRelationship(@NonNull String username, @NonNull String targetUsername, @NonNull OnSuccessListener<FollowGraph.Relationship> onSuccessListener, OnFailureListener onFailureListener) {
+        FollowGraph graph = getFollowGraph(username);
+        if (graph.isLoaded()) {
+            onSuccessListener.onSuccess(graph.getRelationship(targetUsername));
+            return;
+        }
+        isFollowing(username, targetUsername, isFollowing -> {
+            if (isFollowing) {
+                onSuccessListener.onSuccess(FollowGraph.Relationship.FOLLOWING);
+                return;
+            }
+            checkFollowRequestExists(username, targetUsername, requestExists ->
+                    onSuccessListener.onSuccess(requestExists ? FollowGraph.Relationship.REQUESTED : FollowGraph.Relationship.NONE), onFailureListener);
+        }, onFailureListener);
+    }
+
     /**
      * Check if the user is already following another user
      *
@@ -431,30 +771,11 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when the follower cannot be removed
      */
     public void removeFollower(@NonNull String username, @NonNull String followerUsername, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
-        // Remove follower from user's followers collection
-        getParticipantCollRef().document(username).collection("followers").document(followerUsername).delete()
-                .addOnSuccessListener(unused -> {
-                    // Decrement follower count
-                    getParticipantCollRef().document(username).update("followerCount", FieldValue.increment(-1));
-
-                    // Remove user from follower's following collection
-                    getParticipantCollRef().document(followerUsername).collection("following").document(username).delete()
-                            .addOnSuccessListener(aVoid -> {
-                                // Decrement following count
-                                getParticipantCollRef().document(followerUsername).update("followingCount", FieldValue.increment(-1));
-
-                                // Delete any previous follow request documents to allow new requests
-                                deleteFollowRequest(username, followerUsername, onSuccessListener, e -> {
-                                    // Still consider success even if request delete fails
-                                    Log.w(TAG, "Failed to delete follow request after removing follower", e);
-                                    onSuccessListener.onSuccess(null);
-                                });
-                            })
-                            .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                                    Log.e(TAG, "Failed to remove " + username + " from " + followerUsername + "'s following", e));
-                })
+        // Remove both sides of the relationship and the old follow request in one transaction
+        runUnfollowTransaction(username, followerUsername)
+                .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                        Log.e(TAG, "Failed to remove " + followerUsername + " from " + username + "'s followers", e));
+                        Log.e(TAG, "Failed to remove follower " + followerUsername + " from " + username, e));
     }
 
     /**
@@ -466,34 +787,16 @@ public class ParticipantRepository {
      * @param onFailureListener The listener to be called when unfollowing fails
      */
     public void unfollowUser(@NonNull String username, @NonNull String targetUsername, @NonNull OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
-        // Remove target from user's following collection
-        getParticipantCollRef().document(username).collection("following").document(targetUsername).delete()
-                .addOnSuccessListener(unused -> {
-                    // Decrement following count
-                    getParticipantCollRef().document(username).update("followingCount", FieldValue.increment(-1));
-
-                    // Remove user from target's followers collection
-                    getParticipantCollRef().document(targetUsername).collection("followers").document(username).delete()
-                            .addOnSuccessListener(aVoid -> {
-                                // Decrement follower count
-                                getParticipantCollRef().document(targetUsername).update("followerCount", FieldValue.increment(-1));
-
-                                // Delete any previous follow request documents to allow new requests
-                                deleteFollowRequest(targetUsername, username, onSuccessListener, e -> {
-                                    // Still consider success even if request delete fails
-                                    Log.w(TAG, "Failed to delete follow request after unfollowing", e);
-                                    onSuccessListener.onSuccess(null);
-                                });
-                            })
-                            .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                                    Log.e(TAG, "Failed to remove " + username + " from " + targetUsername + "'s followers", e));
-                })
+        // Remove both sides of the relationship and the old follow request in one transaction
+        runUnfollowTransaction(targetUsername, username)
+                .addOnSuccessListener(onSuccessListener)
                 .addOnFailureListener(onFailureListener != null ? onFailureListener : e ->
-                        Log.e(TAG, "Failed to remove " + targetUsername + " from " + username + "'s following", e));
+                        Log.e(TAG, username + " failed to unfollow " + targetUsername, e));
     }
 
     /**
-     * Set up a real-time listener for participant data updates
+     * Set up a real-time listener for participant data updates. Every update also refreshes the
+     * participant in the shared {@link ParticipantCache}.
      *
      * @param username                    The username of the participant to listen for
      * @param onParticipantUpdateListener The listener to be called when the participant data updates
@@ -510,8 +813,12 @@ public class ParticipantRepository {
                     if (documentSnapshot != null && documentSnapshot.exists()) {
                         Participant participant = documentSnapshot.toObject(Participant.class);
                         if (participant != null) {
+                            // Keep the shared cache as fresh as the listener
+                            participantCache.put(username, participant);
                             onParticipantUpdateListener.onSuccess(participant);
                         }
+                    } else {
+                        participantCache.invalidate(username);
                     }
                 });
     }
@@ -0,0 +1,271 @@
+package com.example.bread.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A singleton scheduler shared by the repositories that caps the number of Firestore queries in
+ * flight at once. Fan-out paths schedule each of their queries here instead of starting them all
+ * together, so a participant following thousands of users cannot saturate the Firestore channel and
+ * starve other screens. Queries for what is currently on screen are started before prefetches. A query
+ * that has not completed after {@link #DEFAULT_QUERY_TIMEOUT_MS}, for example offline without a cached
+ * result, fails with a {@link TimeoutException} and releases its slot.
+ */
+public class QueryScheduler {
+    private static final String TAG = "QueryScheduler";
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = 20 * 1000;
+    private static QueryScheduler instance;
+
+    /**
+     * Priority lanes, in the order in which they are drained
+     */
+    public enum Priority {
+        VISIBLE,
+        PREFETCH
+    }
+
+    /**
+     * A snapshot of the queue metrics of a single lane
+     */
+    public static class LaneMetrics {
+        public final int queued;
+        public final int maxQueued;
+        public final long scheduled;
+        public final long completed;
+        public final long totalWaitMillis;
+
+        LaneMetrics(int queued, int maxQueued, long scheduled, long completed, long totalWaitMillis) {
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.scheduled = scheduled;
+            this.completed = completed;
+            this.totalWaitMillis = totalWaitMillis;
+        }
+
+        /**
+         * Returns the average time queries of this lane spent waiting before being started
+         *
+         * @return the average wait in milliseconds, or 0 if no query was started yet
+         */
+        public long getAverageWaitMillis() {
+            long started = scheduled - queued;
+            return started > 0 ? totalWaitMillis / started : 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "LaneMetrics{" +
+                    "queued=" + queued +
+                    ", maxQueued=" + maxQueued +
+                    ", scheduled=" + scheduled +
+                    ", completed=" + completed +
+                    ", averageWaitMillis=" + getAverageWaitMillis() +
+                    '}';
+        }
+    }
+
+    private static class PendingQuery {
+        final Supplier<? extends Task<?>> query;
+        final TaskCompletionSource<Object> result;
+        final long enqueuedAt;
+
+        PendingQuery(Supplier<? extends Task<?>> query, TaskCompletionSource<Object> result, long enqueuedAt) {
+            this.query = query;
+            this.result = result;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static class Lane {
+        final ArrayDeque<PendingQuery> queue = new ArrayDeque<>();
+        int maxQueued;
+        long scheduled;
+        long completed;
+        long totalWaitMillis;
+    }
+
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+    private int maxInFlight;
+    private int inFlight;
+    private long queryTimeoutMillis = DEFAULT_QUERY_TIMEOUT_MS;
+    private Handler timeoutHandler;
+
+    QueryScheduler(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new Lane());
+        }
+    }
+
+    public static synchronized QueryScheduler getInstance() {
+        if (instance == null) {
+            instance = new QueryScheduler(DEFAULT_MAX_IN_FLIGHT);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of queries in flight at once
+     *
+     * @param maxInFlight the maximum number of queries in flight, at least 1
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        synchronized (this) {
+            this.maxInFlight = maxInFlight;
+        }
+        drain();
+    }
+
+    /**
+     * Sets how long a started query may run before it fails and releases its slot
+     *
+     * @param queryTimeoutMillis the timeout in milliseconds, at least 1
+     */
+    public synchronized void setQueryTimeoutMillis(long queryTimeoutMillis) {
+        if (queryTimeoutMillis < 1) {
+            throw new IllegalArgumentException("queryTimeoutMillis must be at least 1");
+        }
+        this.queryTimeoutMillis = queryTimeoutMillis;
+    }
+
+    /**
+     * Schedules a query. The query is started once fewer than the maximum number of queries are in
+     * flight and no query of a higher priority lane is waiting.
+     *
+     * @param priority the lane to schedule the query in
+     * @param query    supplies the task of the query when it is started
+     * @return a task that completes with the result of the query
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Task<T> schedule(@NonNull Priority priority, @NonNull Supplier<Task<T>> query) {
+        TaskCompletionSource<Object> result = new TaskCompletionSource<>();
+        synchronized (this) {
+            Lane lane = lanes.get(priority);
+            lane.queue.add(new PendingQuery(query, result, SystemClock.elapsedRealtime()));
+            lane.scheduled++;
+            lane.maxQueued = Math.max(lane.maxQueued, lane.queue.size());
+        }
+        drain();
+        return (Task<T>) result.getTask();
+    }
+
+    /**
+     * Returns a snapshot of the queue metrics of the given lane
+     *
+     * @param priority the lane
+     * @return the metrics of the lane
+     */
+    public synchronized LaneMetrics getMetrics(@NonNull Priority priority) {
+        Lane lane = lanes.get(priority);
+        return new LaneMetrics(lane.queue.size(), lane.maxQueued, lane.scheduled, lane.completed, lane.totalWaitMillis);
+    }
+
+    /**
+     * Returns the number of queries currently in flight
+     *
+     * @return the number of queries in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Starts waiting queries, highest priority lane first, until the in-flight limit is reached
+     */
+    private void drain() {
+        while (true) {
+            PendingQuery next = null;
+            Lane nextLane = null;
+            synchronized (this) {
+                if (inFlight >= maxInFlight) {
+                    return;
+                }
+                for (Priority priority : Priority.values()) {
+                    Lane lane = lanes.get(priority);
+                    if (!lane.queue.isEmpty()) {
+                        next = lane.queue.poll();
+                        nextLane = lane;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                inFlight++;
+                nextLane.totalWaitMillis += SystemClock.elapsedRealtime() - next.enqueuedAt;
+            }
+            start(next, nextLane);
+        }
+    }
+
+    private void start(PendingQuery pending, Lane lane) {
+        Task<?> task;
+        try {
+            task = pending.query.get();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to start query", e);
+            onQueryComplete(lane);
+            pending.result.setException(e);
+            return;
+        }
+        // The slot is released once, by whichever of completion and timeout comes first
+        AtomicBoolean released = new AtomicBoolean(false);
+        Handler handler;
+        long timeoutMillis;
+        synchronized (this) {
+            if (timeoutHandler == null) {
+                timeoutHandler = new Handler(Looper.getMainLooper());
+            }
+            handler = timeoutHandler;
+            timeoutMillis = queryTimeoutMillis;
+        }
+        Runnable timeout = () -> {
+            if (released.compareAndSet(false, true)) {
+                Log.w(TAG, "Query timed out after " + timeoutMillis + " ms");
+                onQueryComplete(lane);
+                pending.result.trySetException(new TimeoutException("Query timed out after " + timeoutMillis + " ms"));
+            }
+        };
+        handler.postDelayed(timeout, timeoutMillis);
+        // Bookkeeping runs on the completing thread so the next query starts without a main thread hop
+        task.addOnCompleteListener(Runnable::run, t -> {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            handler.removeCallbacks(timeout);
+            onQueryComplete(lane);
+            if (t.isSuccessful()) {
+                pending.result.setResult(t.getResult());
+            } else {
+                pending.result.setException(t.getException() != null ? t.getException() : new Exception("Query failed"));
+            }
+        });
+    }
+
+    private void onQueryComplete(Lane lane) {
+        synchronized (this) {
+            inFlight--;
+            lane.completed++;
+        }
+        drain();
+    }
+}
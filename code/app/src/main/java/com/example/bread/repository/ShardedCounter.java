@@ -0,0 +1,120 @@
+package com.example.bread.repository;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.firestore.AggregateField;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A counter of a document split over {@link #NUM_SHARDS} shard documents, so that many concurrent
+ * increments of a busy counter do not contend on one document. The shards of a counter are stored in
+ * {@code {owner}/counters/{name}/shards/{0..NUM_SHARDS-1}}. Each increment goes to a random shard, and
+ * reads sum all shards with one aggregation query, cached for {@link #CACHE_TTL_MS}.
+ */
+public class ShardedCounter {
+    public static final int NUM_SHARDS = 10;
+    public static final long CACHE_TTL_MS = 30 * 1000;
+    private static final String COUNT_FIELD = "count";
+    private static final AggregateField.SumAggregateField SUM = AggregateField.sum(COUNT_FIELD);
+
+    private static class CachedCount {
+        final long count;
+        final long loadedAt;
+
+        CachedCount(long count, long loadedAt) {
+            this.count = count;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - loadedAt > CACHE_TTL_MS;
+        }
+    }
+
+    private final String name;
+    private final Random random = new Random();
+    // Keyed by the path of the owner document
+    private final Map<String, CachedCount> cache = new HashMap<>();
+
+    /**
+     * @param name the name of the counter, unique among the counters of a document
+     */
+    public ShardedCounter(@NonNull String name) {
+        this.name = name;
+    }
+
+    private CollectionReference getShardsCollRef(@NonNull DocumentReference owner) {
+        return owner.collection("counters").document(name).collection("shards");
+    }
+
+    private DocumentReference getShardRef(@NonNull DocumentReference owner) {
+        return getShardsCollRef(owner).document(String.valueOf(random.nextInt(NUM_SHARDS)));
+    }
+
+    /**
+     * Adds to the counter of a document within a transaction, by incrementing one of its shards chosen
+     * at random, so that the count is applied atomically with the writes it counts. The cached value is
+     * kept, since the transaction function may run again or the commit may fail; call
+     * {@link #invalidate} once the transaction succeeded.
+     *
+     * @param transaction the transaction to add the increment to
+     * @param owner       the document the counter belongs to
+     * @param delta       the amount to add, which may be negative
+     */
+    public void increment(@NonNull Transaction transaction, @NonNull DocumentReference owner, long delta) {
+        transaction.set(getShardRef(owner), Collections.singletonMap(COUNT_FIELD, FieldValue.increment(delta)), SetOptions.merge());
+    }
+
+    /**
+     * Reads the counter of a document, summing its shards
+     *
+     * @param owner             the document the counter belongs to
+     * @param onSuccessListener the listener to be called with the sum of the shards
+     * @param onFailureListener the listener to be called when the shards cannot be read
+     */
+    public void read(@NonNull DocumentReference owner, @NonNull OnSuccessListener<Long> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        String key = owner.getPath();
+        synchronized (cache) {
+            CachedCount cached = cache.get(key);
+            if (cached != null && !cached.isExpired()) {
+                onSuccessListener.onSuccess(cached.count);
+                return;
+            }
+        }
+        getShardsCollRef(owner).aggregate(SUM).get(AggregateSource.SERVER)
+                .addOnSuccessListener(snapshot -> {
+                    Long sum = snapshot.getLong(SUM);
+                    long count = sum != null ? sum : 0;
+                    synchronized (cache) {
+                        cache.put(key, new CachedCount(count, SystemClock.elapsedRealtime()));
+                    }
+                    onSuccessListener.onSuccess(count);
+                })
+                .addOnFailureListener(onFailureListener);
+    }
+
+    /**
+     * Drops the cached value of the counter of a document
+     *
+     * @param owner the document the counter belongs to
+     */
+    public void invalidate(@NonNull DocumentReference owner) {
+        synchronized (cache) {
+            cache.remove(owner.getPath());
+        }
+    }
+}
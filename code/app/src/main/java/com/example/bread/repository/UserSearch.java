@@ -0,0 +1,90 @@
+package com.example.bread.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.example.bread.model.Participant;
+import com.example.bread.utils.PrefixSearchCache;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.List;
+
+/**
+ * A username search that follows what is typed into a search box. Searches are debounced by
+ * {@link #DEBOUNCE_MS}, and starting a search cancels the one before it, so results of a superseded
+ * query are never delivered. Results are cached per prefix and shared by every search box; a query is
+ * answered locally when a shorter prefix returned fewer than {@link ParticipantRepository#SEARCH_LIMIT}
+ * results. All methods are called on the main thread.
+ */
+public class UserSearch {
+    public static final long DEBOUNCE_MS = 300;
+    public static final long TTL_MS = 60 * 1000;
+    public static final int MAX_PREFIXES = 50;
+    private static final PrefixSearchCache<Participant> cache =
+            new PrefixSearchCache<>(ParticipantRepository.SEARCH_LIMIT, MAX_PREFIXES, TTL_MS, Participant::getUsername);
+
+    private final ParticipantRepository participantRepository;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
+    private CancellationTokenSource cancellationTokenSource;
+
+    public UserSearch(@NonNull ParticipantRepository participantRepository) {
+        this.participantRepository = participantRepository;
+    }
+
+    /**
+     * Searches for participants whose username starts with the query, cancelling the previous search.
+     * Cached results are delivered immediately; otherwise the search starts once the query has not
+     * changed for {@link #DEBOUNCE_MS}.
+     *
+     * @param query             the username prefix to search for
+     * @param onSuccessListener the listener to be called with the participants, unless cancelled
+     * @param onFailureListener the listener to be called when the search fails, unless cancelled
+     */
+    public void search(@NonNull String query, @NonNull OnSuccessListener<List<Participant>> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        cancel();
+        List<Participant> cached = cache.get(query, SystemClock.elapsedRealtime());
+        if (cached != null) {
+            onSuccessListener.onSuccess(cached);
+            return;
+        }
+        CancellationTokenSource source = new CancellationTokenSource();
+        cancellationTokenSource = source;
+        pendingSearch = () -> {
+            pendingSearch = null;
+            // Completing this task is a no-op once the token is cancelled, so superseded results are dropped
+            TaskCompletionSource<List<Participant>> result = new TaskCompletionSource<>(source.getToken());
+            result.getTask()
+                    .addOnSuccessListener(onSuccessListener)
+                    .addOnFailureListener(onFailureListener);
+            participantRepository.searchUsersByUsername(query)
+                    .addOnSuccessListener(participants -> {
+                        // Cached even if superseded, since a longer query may be answered from it
+                        cache.put(query, participants, SystemClock.elapsedRealtime());
+                        result.trySetResult(participants);
+                    })
+                    .addOnFailureListener(result::trySetException);
+        };
+        mainHandler.postDelayed(pendingSearch, DEBOUNCE_MS);
+    }
+
+    /**
+     * Cancels the search in progress, if any, so that its listeners are not called
+     */
+    public void cancel() {
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        if (cancellationTokenSource != null) {
+            cancellationTokenSource.cancel();
+            cancellationTokenSource = null;
+        }
+    }
+}
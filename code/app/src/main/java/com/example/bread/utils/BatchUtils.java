@@ -0,0 +1,30 @@
+package com.example.bread.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BatchUtils {
+
+    // Private constructor to prevent instantiation.
+    private BatchUtils() {
+    }
+
+    /**
+     * Splits a list into consecutive chunks of at most the given size, for example to respect the
+     * maximum number of values in a Firestore "in" filter or writes in a batch.
+     *
+     * @param items the list to split
+     * @param size  the maximum size of each chunk, must be positive
+     * @return the chunks, in order; empty if the list is empty
+     */
+    public static <T> List<List<T>> partition(List<T> items, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + size);
+        }
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(new ArrayList<>(items.subList(i, Math.min(i + size, items.size()))));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.bread.utils;
+
+/**
+ * Encodes images into BlurHash strings and decodes them back into blurred pixels. A BlurHash keeps a
+ * few low frequency components of an image in about 30 characters, so it can be stored in the
+ * document of a mood event and shown before any image bytes are loaded.
+ * <a href="https://github.com/woltapp/blurhash/blob/master/Algorithm.md">BlurHash algorithm</a>
+ */
+public final class BlurHash {
+    private static final String CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    // Private constructor to prevent instantiation.
+    private BlurHash() {
+    }
+
+    /**
+     * Encodes pixels into a BlurHash
+     *
+     * @param pixels      the ARGB pixels of the image, row by row
+     * @param width       the width of the image
+     * @param height      the height of the image
+     * @param componentsX the number of horizontal components, from 1 to 9
+     * @param componentsY the number of vertical components, from 1 to 9
+     * @return the BlurHash
+     */
+    public static String encode(int[] pixels, int width, int height, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("Components must be between 1 and 9");
+        }
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Invalid image size");
+        }
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                double normalisation = (i == 0 && j == 0) ? 1 : 2;
+                double r = 0;
+                double g = 0;
+                double b = 0;
+                for (int y = 0; y < height; y++) {
+                    double basisY = Math.cos(Math.PI * j * y / height);
+                    for (int x = 0; x < width; x++) {
+                        double basis = normalisation * Math.cos(Math.PI * i * x / width) * basisY;
+                        int pixel = pixels[y * width + x];
+                        r += basis * sRgbToLinear((pixel >> 16) & 0xff);
+                        g += basis * sRgbToLinear((pixel >> 8) & 0xff);
+                        b += basis * sRgbToLinear(pixel & 0xff);
+                    }
+                }
+                double scale = 1.0 / (width * height);
+                factors[j * componentsX + i] = new double[]{r * scale, g * scale, b * scale};
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        append(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+        double maximumValue = 1;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(value));
+                }
+            }
+            int quantisedMaximum = (int) Math.max(0, Math.min(82, Math.floor(actualMaximum * 166 - 0.5)));
+            maximumValue = (quantisedMaximum + 1) / 166.0;
+            append(hash, quantisedMaximum, 1);
+        } else {
+            append(hash, 0, 1);
+        }
+        double[] dc = factors[0];
+        append(hash, (linearToSRgb(dc[0]) << 16) + (linearToSRgb(dc[1]) << 8) + linearToSRgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            append(hash, quantiseAc(ac[0], maximumValue) * 19 * 19 + quantiseAc(ac[1], maximumValue) * 19 + quantiseAc(ac[2], maximumValue), 2);
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Decodes a BlurHash into the pixels of a blurred image
+     *
+     * @param hash   the BlurHash
+     * @param width  the width of the image to decode to
+     * @param height the height of the image to decode to
+     * @return the opaque ARGB pixels of the image, row by row
+     * @throws IllegalArgumentException if the hash is not a valid BlurHash
+     */
+    public static int[] decode(String hash, int width, int height) {
+        if (hash == null || hash.length() < 6) {
+            throw new IllegalArgumentException("BlurHash is too short");
+        }
+        int sizeFlag = decode83(hash, 0, 1);
+        int componentsX = sizeFlag % 9 + 1;
+        int componentsY = sizeFlag / 9 + 1;
+        if (hash.length() != 4 + 2 * componentsX * componentsY) {
+            throw new IllegalArgumentException("Invalid BlurHash length");
+        }
+        double maximumValue = (decode83(hash, 1, 2) + 1) / 166.0;
+        double[][] colors = new double[componentsX * componentsY][];
+        int dc = decode83(hash, 2, 6);
+        colors[0] = new double[]{sRgbToLinear(dc >> 16), sRgbToLinear((dc >> 8) & 0xff), sRgbToLinear(dc & 0xff)};
+        for (int k = 1; k < colors.length; k++) {
+            int ac = decode83(hash, 4 + k * 2, 6 + k * 2);
+            colors[k] = new double[]{
+                    unquantiseAc(ac / (19 * 19), maximumValue),
+                    unquantiseAc((ac / 19) % 19, maximumValue),
+                    unquantiseAc(ac % 19, maximumValue)};
+        }
+
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double r = 0;
+                double g = 0;
+                double b = 0;
+                for (int j = 0; j < componentsY; j++) {
+                    double basisY = Math.cos(Math.PI * y * j / height);
+                    for (int i = 0; i < componentsX; i++) {
+                        double basis = Math.cos(Math.PI * x * i / width) * basisY;
+                        double[] color = colors[j * componentsX + i];
+                        r += color[0] * basis;
+                        g += color[1] * basis;
+                        b += color[2] * basis;
+                    }
+                }
+                pixels[y * width + x] = 0xff000000 | (linearToSRgb(r) << 16) | (linearToSRgb(g) << 8) | linearToSRgb(b);
+            }
+        }
+        return pixels;
+    }
+
+    private static int quantiseAc(double value, double maximumValue) {
+        return (int) Math.max(0, Math.min(18, Math.floor(signPow(value / maximumValue, 0.5) * 9 + 9.5)));
+    }
+
+    private static double unquantiseAc(int value, double maximumValue) {
+        return signPow((value - 9) / 9.0, 2) * maximumValue;
+    }
+
+    private static double signPow(double value, double exponent) {
+        return Math.copySign(Math.pow(Math.abs(value), exponent), value);
+    }
+
+    private static double sRgbToLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int linearToSRgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308 ? (int) (v * 12.92 * 255 + 0.5) : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void append(StringBuilder hash, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            hash.append(CHARACTERS.charAt(digit));
+        }
+    }
+
+    private static int decode83(String hash, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = CHARACTERS.indexOf(hash.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid BlurHash character");
+            }
+            value = value * 83 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bread.utils;
+
+import com.example.bread.model.MoodEvent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public final class FeedUtils {
+
+    // Private constructor to prevent instantiation.
+    private FeedUtils() {
+    }
+
+    /**
+     * Merges a batch of mood events into a feed in a single linear pass. Both lists must already be
+     * sorted newest first; events of the batch whose id is already in the feed are skipped.
+     *
+     * @param feed  the feed, sorted newest first
+     * @param batch the batch to merge in, sorted newest first
+     * @return a new list with the events of both, sorted newest first
+     */
+    public static List<MoodEvent> mergeNewestFirst(List<MoodEvent> feed, List<MoodEvent> batch) {
+        Set<String> ids = new HashSet<>();
+        for (MoodEvent event : feed) {
+            ids.add(event.getId());
+        }
+        List<MoodEvent> merged = new ArrayList<>(feed.size() + batch.size());
+        int i = 0;
+        int j = 0;
+        while (i < feed.size() || j < batch.size()) {
+            if (j < batch.size() && ids.contains(batch.get(j).getId())) {
+                j++;
+            } else if (j >= batch.size() || (i < feed.size() && feed.get(i).compareTo(batch.get(j)) >= 0)) {
+                merged.add(feed.get(i++));
+            } else {
+                merged.add(batch.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Finds where a mood event belongs in a feed using binary search, after any events with the
+     * same timestamp.
+     *
+     * @param feed  the feed, sorted newest first
+     * @param event the mood event to insert
+     * @return the index at which to insert the mood event
+     */
+    public static int insertionIndex(List<MoodEvent> feed, MoodEvent event) {
+        int low = 0;
+        int high = feed.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (feed.get(mid).compareTo(event) >= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.bread.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of the second-degree connections of a participant, for suggesting whom to follow.
+ * Usernames are interned to dense integer ids; the following list of every participant they follow is
+ * kept as a sorted id array, and the number of followed participants who follow each candidate is
+ * kept in a counter array. Following or unfollowing a participant only adds or subtracts their list,
+ * and the top suggestions are found from a histogram of the counters, sorting only the candidates that
+ * make the cut.
+ *
+ * <p>
+ * The index is not thread safe; {@link com.example.bread.repository.FollowSuggestions} owns one on
+ * the main thread.
+ * </p>
+ */
+public class FollowSuggestionIndex {
+
+    /**
+     * A participant to suggest, with the number of followed participants who follow them
+     */
+    public static class Suggestion {
+        private final String username;
+        private final int mutualCount;
+
+        Suggestion(String username, int mutualCount) {
+            this.username = username;
+            this.mutualCount = mutualCount;
+        }
+
+        /**
+         * Returns the username of the suggested participant
+         *
+         * @return the username
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * Returns the number of followed participants who follow the suggested participant
+         *
+         * @return the number of mutual connections
+         */
+        public int getMutualCount() {
+            return mutualCount;
+        }
+    }
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> usernames = new ArrayList<>();
+    private final Map<String, int[]> followingOf = new HashMap<>();
+    // Participants that are never suggested: the participant and those they follow
+    private final BitSet excluded = new BitSet();
+    private int[] counts = new int[64];
+
+    /**
+     * @param username the username of the participant to suggest for
+     */
+    public FollowSuggestionIndex(@NonNull String username) {
+        excluded.set(intern(username));
+    }
+
+    private int intern(@NonNull String username) {
+        Integer id = ids.get(username);
+        if (id != null) {
+            return id;
+        }
+        int newId = usernames.size();
+        ids.put(username, newId);
+        usernames.add(username);
+        if (newId >= counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        return newId;
+    }
+
+    /**
+     * Adds a participant that is followed, counting everyone they follow as a candidate. Adding a
+     * participant again replaces their following list.
+     *
+     * @param followed          the username of the followed participant
+     * @param followedFollowing the usernames the followed participant follows
+     */
+    public void addFollowed(@NonNull String followed, @NonNull Collection<String> followedFollowing) {
+        removeFollowed(followed);
+        excluded.set(intern(followed));
+        int[] list = new int[followedFollowing.size()];
+        int size = 0;
+        for (String username : followedFollowing) {
+            if (username != null) {
+                list[size++] = intern(username);
+            }
+        }
+        Arrays.sort(list, 0, size);
+        // Drop duplicates, so each followed participant counts once per candidate
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || list[i] != list[unique - 1]) {
+                list[unique++] = list[i];
+            }
+        }
+        list = Arrays.copyOf(list, unique);
+        for (int id : list) {
+            counts[id]++;
+        }
+        followingOf.put(followed, list);
+    }
+
+    /**
+     * Removes a participant that is no longer followed, so that they and everyone they follow can be
+     * suggested again
+     *
+     * @param followed the username of the participant
+     */
+    public void removeFollowed(@NonNull String followed) {
+        int[] list = followingOf.remove(followed);
+        if (list == null) {
+            return;
+        }
+        for (int id : list) {
+            counts[id]--;
+        }
+        excluded.clear(ids.get(followed));
+    }
+
+    /**
+     * Returns the usernames of the followed participants in the index
+     *
+     * @return the followed usernames
+     */
+    public Set<String> getFollowed() {
+        return Collections.unmodifiableSet(followingOf.keySet());
+    }
+
+    /**
+     * Returns the number of followed participants who follow a participant
+     *
+     * @param username the username of the participant
+     * @return the number of mutual connections
+     */
+    public int getMutualCount(@NonNull String username) {
+        Integer id = ids.get(username);
+        return id != null ? counts[id] : 0;
+    }
+
+    /**
+     * Returns the participants with the most mutual connections, ties broken by username
+     *
+     * @param limit   the maximum number of suggestions
+     * @param exclude usernames not to suggest, such as those with a pending follow request
+     * @return the suggestions, most mutual connections first
+     */
+    public List<Suggestion> top(int limit, @NonNull Set<String> exclude) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        if (limit <= 0) {
+            return suggestions;
+        }
+        // Counts are at most the number of followed participants, so a histogram finds the lowest
+        // count that makes the cut in one pass over the counters
+        int[] histogram = new int[followingOf.size() + 1];
+        for (int id = excluded.nextClearBit(0); id < usernames.size(); id = excluded.nextClearBit(id + 1)) {
+            histogram[counts[id]]++;
+        }
+        int threshold = histogram.length - 1;
+        int kept = histogram[threshold];
+        while (threshold > 1 && kept < limit + exclude.size()) {
+            kept += histogram[--threshold];
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        for (int id = excluded.nextClearBit(0); id < usernames.size(); id = excluded.nextClearBit(id + 1)) {
+            if (counts[id] >= threshold && counts[id] > 0 && !exclude.contains(usernames.get(id))) {
+                candidates.add(id);
+            }
+        }
+        Collections.sort(candidates, (a, b) -> counts[a] != counts[b]
+                ? Integer.compare(counts[b], counts[a])
+                : usernames.get(a).compareTo(usernames.get(b)));
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            int id = candidates.get(i);
+            suggestions.add(new Suggestion(usernames.get(id), counts[id]));
+        }
+        return suggestions;
+    }
+}
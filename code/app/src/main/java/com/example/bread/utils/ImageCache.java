@@ -0,0 +1,213 @@
+package com.example.bread.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A singleton two-tier cache of decoded images, keyed by the hash of their content so that the same
+ * avatar or attachment is only decoded once no matter how many rows show it.
+ *
+ * <p>
+ * The memory tier is an LRU sized by the byte count of the bitmaps. The disk tier keeps the raw
+ * pixels of the decoded, downsampled bitmaps so that restoring one is a file read instead of a JPEG
+ * decode, and is trimmed to {@link #DISK_MAX_BYTES} by evicting the least recently used files.
+ * Disk writes run in the background.
+ * </p>
+ */
+public class ImageCache {
+    private static final String TAG = "ImageCache";
+    private static final String DIRECTORY_NAME = "decoded_images";
+    public static final long DISK_MAX_BYTES = 48L * 1024 * 1024;
+    private static ImageCache instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File directory;
+    // All disk writes and trims run in order on a single background thread
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    // Hashing a 64 KB string on every bind would defeat the cache, so hashes are remembered per string
+    private final Map<String, String> keys = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private ImageCache(Context context) {
+        // Use an eighth of the memory available to the app for decoded bitmaps
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+    }
+
+    public static synchronized ImageCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cache key of an encoded image, its {@link ImageHandler#contentHash}
+     *
+     * @param content the encoded image
+     * @return the cache key
+     */
+    @NonNull
+    public String keyFor(@NonNull String content) {
+        String key = keys.get(content);
+        if (key == null) {
+            key = ImageHandler.contentHash(content);
+            keys.put(content, key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns a bitmap from the memory tier
+     *
+     * @param key the cache key
+     * @return the bitmap, or null if it is not in memory
+     */
+    @Nullable
+    public Bitmap getFromMemory(@NonNull String key) {
+        return memoryCache.get(key);
+    }
+
+    /**
+     * Returns a bitmap from the memory tier, or restores it from the disk tier
+     *
+     * @param key the cache key
+     * @return the bitmap, or null if it is in neither tier
+     */
+    @Nullable
+    public Bitmap get(@NonNull String key) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = readFromDisk(key);
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a decoded bitmap to both tiers
+     *
+     * @param key    the cache key
+     * @param bitmap the decoded bitmap
+     */
+    public void put(@NonNull String key, @NonNull Bitmap bitmap) {
+        memoryCache.put(key, bitmap);
+        diskExecutor.execute(() -> writeToDisk(key, bitmap));
+    }
+
+    /**
+     * Adds a bitmap to the memory tier only, for small bitmaps that are cheap to decode again
+     *
+     * @param key    the cache key
+     * @param bitmap the decoded bitmap
+     */
+    public void putInMemory(@NonNull String key, @NonNull Bitmap bitmap) {
+        memoryCache.put(key, bitmap);
+    }
+
+    /**
+     * Drops the memory tier, for example when the system is low on memory
+     */
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    @Nullable
+    private Bitmap readFromDisk(String key) {
+        File file = new File(directory, key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] pixels = new byte[width * height * 4];
+            in.readFully(pixels);
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+            // Mark the file as recently used for trimming
+            file.setLastModified(System.currentTimeMillis());
+            return bitmap;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to read cached image " + key, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+        File file = new File(directory, key);
+        if (file.exists() || (!directory.exists() && !directory.mkdirs())) {
+            return;
+        }
+        File temp = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+            bitmap.copyPixelsToBuffer(pixels);
+            out.writeInt(bitmap.getWidth());
+            out.writeInt(bitmap.getHeight());
+            out.write(pixels.array());
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to write cached image " + key, e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_MAX_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= DISK_MAX_BYTES) {
+                break;
+            }
+            total -= file.length();
+            file.delete();
+        }
+    }
+}
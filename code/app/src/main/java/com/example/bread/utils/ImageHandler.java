@@ -3,12 +3,19 @@ package com.example.bread.utils;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.Build;
 import android.util.Base64;
+import android.util.Log;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Utility class for handling images that are stored in Firebase.
@@ -16,9 +23,20 @@ import java.io.InputStream;
  * <a href="https://stackoverflow.com/questions/18545246/how-to-compress-image-size">Compress Image Size</a>
  */
 public class ImageHandler {
+    private static final String TAG = "ImageHandler";
 
     public static final int MAX_IMAGE_SIZE = 64 * 1024; // 64 KB
     public static final float SCALE_FACTOR = 0.7f;
+    // Largest image that is encoded, about 0.8 megapixels, which still fits in 64 KB at a good quality
+    public static final int MAX_IMAGE_PIXELS = 1024 * 768;
+    public static final int THUMBNAIL_SIZE = 32;
+    private static final int THUMBNAIL_QUALITY = 60;
+    // Feed rows show images in an 80dp holder, which is 320 pixels on the densest screens
+    public static final int LIST_IMAGE_SIZE = 320;
+    private static final int LIST_IMAGE_QUALITY = 80;
+    private static final int BLUR_HASH_COMPONENTS_X = 4;
+    private static final int BLUR_HASH_COMPONENTS_Y = 3;
+    private static final int BLUR_HASH_DECODE_SIZE = 16;
 
     /**
      * Compress an image file to a base64 encoded string with size less than {@link #MAX_IMAGE_SIZE}.
@@ -39,12 +57,138 @@ public class ImageHandler {
      * @throws IOException if the file cannot be read
      */
     public static String compressImageToBase64(Context context, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = readImageBounds(context, uri);
+        int sampleSize = calculateSampleSizeForPixels(bounds.outWidth, bounds.outHeight, MAX_IMAGE_PIXELS);
+        Bitmap bitmap = decodeSampledImage(context, uri, sampleSize);
+        return compressBitmapToBase64(applyExifOrientation(bitmap, readExifOrientation(context, uri)));
+    }
+
+    /**
+     * Read the dimensions of an image file without decoding its pixels.
+     *
+     * @param context the context
+     * @param uri     the URI of the image file
+     * @return the options holding the dimensions in outWidth and outHeight
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    public static BitmapFactory.Options readImageBounds(Context context, Uri uri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = openImage(context, uri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + uri);
+        }
+        return options;
+    }
+
+    /**
+     * Read the EXIF orientation of an image file, which camera photos use instead of rotating their
+     * pixels.
+     *
+     * @param context the context
+     * @param uri     the URI of the image file
+     * @return one of the ExifInterface orientation constants, normal if the file has none
+     */
+    public static int readExifOrientation(Context context, Uri uri) {
+        try (InputStream inputStream = openImage(context, uri)) {
+            return new ExifInterface(inputStream).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the orientation of " + uri, e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps at least the given number of pixels,
+     * so the decoded image has between one and four times that many pixels.
+     *
+     * @param width     the width of the encoded image
+     * @param height    the height of the encoded image
+     * @param maxPixels the number of pixels the image will be scaled down to
+     * @return the sample size to decode with
+     */
+    public static int calculateSampleSizeForPixels(int width, int height, long maxPixels) {
+        int inSampleSize = 1;
+        while ((long) (width / (inSampleSize * 2)) * (height / (inSampleSize * 2)) >= maxPixels) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Decode an image file, skipping pixels as it is read so that the full resolution image is
+     * never held in memory.
+     *
+     * @param context    the context
+     * @param uri        the URI of the image file
+     * @param sampleSize the sample size to decode with
+     * @return the decoded bitmap
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static Bitmap decodeSampledImage(Context context, Uri uri, int sampleSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap;
+        try (InputStream inputStream = openImage(context, uri)) {
+            bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + uri);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Rotate and flip a bitmap decoded from a file so that it is shown as its EXIF orientation says.
+     *
+     * @param bitmap      the decoded bitmap
+     * @param orientation one of the ExifInterface orientation constants
+     * @return the upright bitmap, the same bitmap if it already is
+     */
+    public static Bitmap applyExifOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        Bitmap oriented = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (oriented != bitmap) {
+            bitmap.recycle();
+        }
+        return oriented;
+    }
+
+    private static InputStream openImage(Context context, Uri uri) throws IOException {
         InputStream inputStream = context.getContentResolver().openInputStream(uri);
-        Bitmap originalBitmap = BitmapFactory.decodeStream(inputStream);
-        if (inputStream != null) {
-            inputStream.close();
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + uri);
         }
-        return compressBitmapToBase64(originalBitmap);
+        return inputStream;
     }
 
     /**
@@ -54,28 +198,64 @@ public class ImageHandler {
      * @return Base64 encoded string of the compressed image
      */
     public static String compressBitmapToBase64(Bitmap bitmap) {
-        if (bitmap == null) {
+        byte[] compressedData = compressBitmapToBytes(bitmap);
+        if (compressedData == null) {
             return null;
         }
+        return Base64.encodeToString(compressedData, Base64.NO_WRAP);
+    }
 
-        int quality = 100;
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-
-        // Keep reducing quality until we're under the size limit
-        while (outputStream.toByteArray().length > MAX_IMAGE_SIZE) {
-            outputStream.reset();
+    /**
+     * Compress a bitmap to JPEG bytes with size less than {@link #MAX_IMAGE_SIZE}.
+     *
+     * @param bitmap the bitmap to compress
+     * @return the JPEG encoded image
+     */
+    public static byte[] compressBitmapToBytes(Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+        TargetSizeEncoder.Result result = encodeToTargetSize(bitmap, MAX_IMAGE_SIZE, false);
+        Log.d(TAG, "Encoded image at quality " + result.getQuality() + " in " + result.getPasses() + " passes");
+        return result.getBytes();
+    }
 
-            quality -= 10;
-            if (quality <= 10) {
-                quality = 70;
-                // Scale down the bitmap
-                bitmap = scaleBitmap(bitmap);
+    /**
+     * Encode a bitmap at the highest quality that fits in a byte budget. The bitmap is first scaled
+     * down to {@link #MAX_IMAGE_PIXELS}, so large photos are never encoded at full resolution, and
+     * the quality is then found with {@link TargetSizeEncoder}. Only if the image does not fit at the
+     * lowest quality is it scaled down by {@link #SCALE_FACTOR} and searched again.
+     *
+     * @param bitmap   the bitmap to encode
+     * @param maxBytes the byte budget
+     * @param webp     whether to encode as WebP instead of JPEG
+     * @return the result, with the number of encode passes used over all scales
+     */
+    public static TargetSizeEncoder.Result encodeToTargetSize(Bitmap bitmap, int maxBytes, boolean webp) {
+        Bitmap.CompressFormat format = !webp ? Bitmap.CompressFormat.JPEG
+                : Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+        double scale = TargetSizeEncoder.scaleForPixelBudget(bitmap.getWidth(), bitmap.getHeight(), MAX_IMAGE_PIXELS);
+        if (scale < 1) {
+            bitmap = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, (int) (bitmap.getWidth() * scale)), Math.max(1, (int) (bitmap.getHeight() * scale)), true);
+        }
+        int passes = 0;
+        while (true) {
+            Bitmap source = bitmap;
+            TargetSizeEncoder.Result result;
+            try {
+                result = TargetSizeEncoder.encode((quality, out) -> source.compress(format, quality, out), maxBytes);
+            } catch (IOException e) {
+                // Compressing into memory does not fail
+                throw new IllegalStateException(e);
+            }
+            passes += result.getPasses();
+            if (result.getBytes() != null || bitmap.getWidth() <= 1 || bitmap.getHeight() <= 1) {
+                return new TargetSizeEncoder.Result(result.getBytes(), result.getQuality(), passes);
             }
-            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
+            bitmap = scaleBitmap(bitmap);
         }
-        byte[] compressedData = outputStream.toByteArray();
-        return Base64.encodeToString(compressedData, Base64.DEFAULT);
     }
 
     /**
@@ -108,4 +288,196 @@ public class ImageHandler {
         byte[] decodedString = Base64.decode(base64, Base64.DEFAULT);
         return BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
     }
+
+    /**
+     * Convert a base64 encoded string to a bitmap, downsampled while decoding so that it is not much
+     * larger than the requested size. Only the image header is read to pick the sample size, so the
+     * full resolution bitmap is never allocated.
+     *
+     * @param base64    the base64 encoded string
+     * @param reqWidth  the width the bitmap will be shown at, in pixels
+     * @param reqHeight the height the bitmap will be shown at, in pixels
+     * @return the bitmap, or null if conversion fails
+     */
+    public static Bitmap base64ToBitmap(String base64, int reqWidth, int reqHeight) {
+        return bytesToBitmap(base64ToBytes(base64), reqWidth, reqHeight);
+    }
+
+    /**
+     * Convert an encoded image to a bitmap, downsampled while decoding so that it is not much larger
+     * than the requested size. The bytes are decoded in place, without being copied or converted.
+     *
+     * @param bytes     the encoded image, such as the bytes of a Firestore blob
+     * @param reqWidth  the width the bitmap will be shown at, in pixels
+     * @param reqHeight the height the bitmap will be shown at, in pixels
+     * @return the bitmap, or null if conversion fails
+     */
+    public static Bitmap bytesToBitmap(byte[] bytes, int reqWidth, int reqHeight) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    /**
+     * Convert a base64 encoded string to the bytes of the encoded image.
+     * If the string contains a data URI prefix (e.g., "data:image/webp;base64,"), the prefix is removed before decoding.
+     *
+     * @param base64 the base64 encoded string
+     * @return the encoded image, or null if the string is empty or not valid base64
+     */
+    public static byte[] base64ToBytes(String base64) {
+        if (base64 == null || base64.isEmpty()) {
+            return null;
+        }
+        if (base64.startsWith("data:image")) {
+            base64 = base64.substring(base64.indexOf(",") + 1);
+        }
+        try {
+            return Base64.decode(base64, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps both sides of the decoded image at
+     * least as large as the requested size.
+     * <a href="https://developer.android.com/topic/performance/graphics/load-bitmap">Loading Large Bitmaps Efficiently</a>
+     *
+     * @param width     the width of the encoded image
+     * @param height    the height of the encoded image
+     * @param reqWidth  the requested width
+     * @param reqHeight the requested height
+     * @return the sample size to decode with
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while (height / (inSampleSize * 2) >= reqHeight && width / (inSampleSize * 2) >= reqWidth) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Returns the content hash of a base64 encoded image, the hash of the image it encodes so that
+     * the same image has the same hash however it was encoded or stored.
+     *
+     * @param base64 the base64 encoded image
+     * @return the hex encoded SHA-256 hash of the image
+     */
+    public static String contentHash(String base64) {
+        byte[] bytes = base64ToBytes(base64);
+        return contentHash(bytes != null ? bytes : base64.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the content hash of an encoded image, used as its id in the images collection and as
+     * its key in the image cache.
+     *
+     * @param bytes the encoded image
+     * @return the hex encoded SHA-256 hash of the image
+     */
+    public static String contentHash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Create a tiny thumbnail of an encoded image, small enough to be stored in the document that
+     * shows it and displayed while the full image loads.
+     *
+     * @param bytes the encoded image
+     * @return Base64 encoded string of a thumbnail at most {@link #THUMBNAIL_SIZE} pixels on its
+     * longest side, or null if the image cannot be decoded
+     */
+    public static String createThumbnail(byte[] bytes) {
+        Bitmap bitmap = bytesToBitmap(bytes, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        if (bitmap == null) {
+            return null;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        scaleToFit(bitmap, THUMBNAIL_SIZE).compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, outputStream);
+        return Base64.encodeToString(outputStream.toByteArray(), Base64.NO_WRAP);
+    }
+
+    /**
+     * Create the list-size version of an encoded image, shown in feed rows instead of the full image.
+     *
+     * @param bytes the encoded image
+     * @return the JPEG encoded image at most {@link #LIST_IMAGE_SIZE} pixels on its longest side, or
+     * null if the image is already that small or cannot be decoded
+     */
+    public static byte[] createListImage(byte[] bytes) {
+        Bitmap bitmap = bytesToBitmap(bytes, LIST_IMAGE_SIZE, LIST_IMAGE_SIZE);
+        if (bitmap == null || Math.max(bitmap.getWidth(), bitmap.getHeight()) <= LIST_IMAGE_SIZE) {
+            return null;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        scaleToFit(bitmap, LIST_IMAGE_SIZE).compress(Bitmap.CompressFormat.JPEG, LIST_IMAGE_QUALITY, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Create the {@link BlurHash} of an encoded image, a placeholder of about 30 characters that is
+     * stored in the document showing the image.
+     *
+     * @param bytes the encoded image
+     * @return the BlurHash, or null if the image cannot be decoded
+     */
+    public static String createBlurHash(byte[] bytes) {
+        Bitmap bitmap = bytesToBitmap(bytes, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        if (bitmap == null) {
+            return null;
+        }
+        Bitmap small = scaleToFit(bitmap, THUMBNAIL_SIZE);
+        int[] pixels = new int[small.getWidth() * small.getHeight()];
+        small.getPixels(pixels, 0, small.getWidth(), 0, 0, small.getWidth(), small.getHeight());
+        return BlurHash.encode(pixels, small.getWidth(), small.getHeight(), BLUR_HASH_COMPONENTS_X, BLUR_HASH_COMPONENTS_Y);
+    }
+
+    /**
+     * Decode a {@link BlurHash} into a small bitmap, to be stretched over the image view as a placeholder.
+     *
+     * @param blurHash the BlurHash
+     * @return the bitmap, or null if the BlurHash is not valid
+     */
+    public static Bitmap blurHashToBitmap(String blurHash) {
+        try {
+            int[] pixels = BlurHash.decode(blurHash, BLUR_HASH_DECODE_SIZE, BLUR_HASH_DECODE_SIZE);
+            return Bitmap.createBitmap(pixels, BLUR_HASH_DECODE_SIZE, BLUR_HASH_DECODE_SIZE, Bitmap.Config.ARGB_8888);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid BlurHash " + blurHash, e);
+            return null;
+        }
+    }
+
+    /**
+     * Scale a bitmap down so that its longest side is at most the given size.
+     */
+    private static Bitmap scaleToFit(Bitmap bitmap, int maxSize) {
+        float scale = Math.min(1f, (float) maxSize / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale == 1f) {
+            return bitmap;
+        }
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)), Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+    }
 }
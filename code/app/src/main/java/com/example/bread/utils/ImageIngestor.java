@@ -0,0 +1,153 @@
+package com.example.bread.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A singleton pipeline that turns a picked image into the base64 image attached to a mood event, off
+ * the main thread. Only the bounds of the picked file are read first; the file is then decoded with
+ * a sample size that keeps it close to {@link ImageHandler#MAX_IMAGE_PIXELS}, turned upright from its
+ * EXIF orientation and encoded with {@link ImageHandler#encodeToTargetSize}, so a large camera photo is
+ * never held in memory at full resolution.
+ */
+public class ImageIngestor {
+    private static final String TAG = "ImageIngestor";
+    private static ImageIngestor instance;
+
+    /**
+     * Listener for the progress of an ingestion, called on the main thread
+     */
+    public interface ProgressListener {
+        /**
+         * Called as the ingestion moves through its stages
+         *
+         * @param percent the progress, from 0 to 100
+         */
+        void onProgress(int percent);
+    }
+
+    /**
+     * An ingestion in progress, which can be cancelled
+     */
+    public static class Ingestion {
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private Future<?> future;
+
+        /**
+         * Cancels the ingestion. None of its listeners are called afterwards.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * Returns whether the ingestion is still running
+         */
+        public boolean isPending() {
+            return !cancelled && !done;
+        }
+
+        private void checkCancelled() {
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ImageIngestor() {
+    }
+
+    public static synchronized ImageIngestor getInstance() {
+        if (instance == null) {
+            instance = new ImageIngestor();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts ingesting a picked image in the background
+     *
+     * @param context           the context
+     * @param uri               the URI of the picked image
+     * @param progressListener  the listener to be called with the progress
+     * @param onSuccessListener the listener to be called with the base64 encoded image
+     * @param onFailureListener the listener to be called when the image cannot be read or encoded
+     * @return the ingestion, to cancel it
+     */
+    public Ingestion ingest(@NonNull Context context, @NonNull Uri uri, @NonNull ProgressListener progressListener,
+                            @NonNull OnSuccessListener<String> onSuccessListener, @NonNull OnFailureListener onFailureListener) {
+        Context appContext = context.getApplicationContext();
+        Ingestion ingestion = new Ingestion();
+        ingestion.future = executor.submit(() -> {
+            try {
+                post(ingestion, () -> progressListener.onProgress(0));
+                BitmapFactory.Options bounds = ImageHandler.readImageBounds(appContext, uri);
+                int orientation = ImageHandler.readExifOrientation(appContext, uri);
+                ingestion.checkCancelled();
+                post(ingestion, () -> progressListener.onProgress(10));
+
+                int sampleSize = ImageHandler.calculateSampleSizeForPixels(bounds.outWidth, bounds.outHeight, ImageHandler.MAX_IMAGE_PIXELS);
+                Bitmap bitmap = ImageHandler.applyExifOrientation(ImageHandler.decodeSampledImage(appContext, uri, sampleSize), orientation);
+                ingestion.checkCancelled();
+                post(ingestion, () -> progressListener.onProgress(50));
+
+                TargetSizeEncoder.Result result = ImageHandler.encodeToTargetSize(bitmap, ImageHandler.MAX_IMAGE_SIZE, false);
+                bitmap.recycle();
+                if (result.getBytes() == null) {
+                    throw new IOException("Image does not fit in " + ImageHandler.MAX_IMAGE_SIZE + " bytes");
+                }
+                ingestion.checkCancelled();
+                Log.d(TAG, "Ingested " + bounds.outWidth + "x" + bounds.outHeight + " image with sample size " + sampleSize
+                        + " in " + result.getPasses() + " encode passes");
+                String base64 = Base64.encodeToString(result.getBytes(), Base64.NO_WRAP);
+                post(ingestion, () -> {
+                    ingestion.done = true;
+                    progressListener.onProgress(100);
+                    onSuccessListener.onSuccess(base64);
+                });
+            } catch (CancellationException e) {
+                Log.d(TAG, "Cancelled ingesting " + uri);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                Exception failure = e instanceof Exception ? (Exception) e : new IOException("Image is too large", e);
+                post(ingestion, () -> {
+                    ingestion.done = true;
+                    onFailureListener.onFailure(failure);
+                });
+            }
+        });
+        return ingestion;
+    }
+
+    // Only deliver to listeners of ingestions that were not cancelled in the meantime
+    private void post(Ingestion ingestion, Runnable runnable) {
+        mainHandler.post(() -> {
+            if (!ingestion.cancelled) {
+                runnable.run();
+            }
+        });
+    }
+}
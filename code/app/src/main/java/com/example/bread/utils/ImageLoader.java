@@ -0,0 +1,334 @@
+package com.example.bread.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bread.model.MoodEvent;
+import com.example.bread.model.Participant;
+import com.example.bread.repository.ImageRepository;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A singleton entry point for showing the base64 images stored in Firestore. Every screen loads its
+ * avatars and attachments through here, so that each image is decoded once and then served from the
+ * shared {@link ImageCache}. Images kept in the images collection are only fetched when they are
+ * about to be shown, and lists only fetch the list-size version of mood event images.
+ *
+ * <p>
+ * Images are decoded on a background pool, downsampled to the size of the image view they are shown
+ * in. Until the image is ready the view shows a placeholder. Each image view has at most one request
+ * in flight: loading another image into a recycled row cancels the previous request, so a row never
+ * shows an image that belongs to the item it was bound to before.
+ * </p>
+ */
+public class ImageLoader {
+    // Size to decode at when the image view has not been measured and has no fixed size
+    public static final int DECODE_SIZE = 512;
+    private static final int DECODE_THREADS = 2;
+    private static ImageLoader instance;
+
+    private static class Request {
+        final String key;
+        Future<?> future;
+
+        Request(String key) {
+            this.key = key;
+        }
+    }
+
+    private final ImageCache cache;
+    private ImageRepository imageRepository;
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // In-flight request of each image view, only touched on the main thread
+    private final Map<ImageView, Request> requests = new WeakHashMap<>();
+
+    private ImageLoader(Context context) {
+        cache = ImageCache.getInstance(context);
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageLoader(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Shows a base64 image in an image view. A cached image is shown immediately; otherwise the
+     * placeholder is shown while the image is decoded in the background, and stays if there is no
+     * image or it cannot be decoded. Must be called on the main thread.
+     *
+     * @param base64         the base64 encoded image, may be null
+     * @param target         the image view to show the image in
+     * @param placeholderRes the drawable to show until the image is ready, or 0 for none
+     */
+    public void load(@Nullable String base64, @NonNull ImageView target, @DrawableRes int placeholderRes) {
+        if (base64 == null || base64.isEmpty()) {
+            cancel(target);
+            showPlaceholder(target, placeholderRes);
+            return;
+        }
+        int width = targetSize(target.getWidth(), target.getLayoutParams() != null ? target.getLayoutParams().width : 0);
+        int height = targetSize(target.getHeight(), target.getLayoutParams() != null ? target.getLayoutParams().height : 0);
+        String key = cache.keyFor(base64) + "@" + width + "x" + height;
+
+        Request pending = requests.get(target);
+        if (pending != null && pending.key.equals(key)) {
+            // Rebinding the same image, the request in flight will show it
+            return;
+        }
+        cancel(target);
+
+        Bitmap cached = cache.getFromMemory(key);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+        showPlaceholder(target, placeholderRes);
+
+        Request request = new Request(key);
+        requests.put(target, request);
+        request.future = decodeExecutor.submit(() -> {
+            Bitmap bitmap = cache.get(key);
+            if (bitmap == null && !Thread.currentThread().isInterrupted()) {
+                bitmap = ImageHandler.base64ToBitmap(base64, width, height);
+                if (bitmap != null) {
+                    cache.put(key, bitmap);
+                }
+            }
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                // Only swap in the image if the view was not rebound in the meantime
+                if (requests.get(target) == request) {
+                    requests.remove(target);
+                    if (result != null) {
+                        target.setImageBitmap(result);
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Shows the full attached image of a mood event, fetching it from the images collection when it
+     * is not cached. Its BlurHash is shown in the meantime. Must be called on the main thread.
+     *
+     * @param moodEvent      the mood event
+     * @param target         the image view to show the image in
+     * @param placeholderRes the drawable to show when there is no BlurHash, or 0 for none
+     */
+    public void loadMoodEventImage(@NonNull MoodEvent moodEvent, @NonNull ImageView target, @DrawableRes int placeholderRes) {
+        loadStored(moodEvent.getAttachedImageHash(), null, moodEvent.getAttachedImageBlurHash(), moodEvent.getAttachedImage(), target, placeholderRes);
+    }
+
+    /**
+     * Shows the list-size version of the attached image of a mood event, for rows of a list, so that
+     * rows never fetch the full image. Its BlurHash is shown in the meantime. Must be called on the
+     * main thread.
+     *
+     * @param moodEvent      the mood event
+     * @param target         the image view to show the image in
+     * @param placeholderRes the drawable to show when there is no BlurHash, or 0 for none
+     */
+    public void loadMoodEventListImage(@NonNull MoodEvent moodEvent, @NonNull ImageView target, @DrawableRes int placeholderRes) {
+        // Images that are already small enough for lists only have a full version
+        String hash = moodEvent.getAttachedImageListHash() != null ? moodEvent.getAttachedImageListHash() : moodEvent.getAttachedImageHash();
+        loadStored(hash, null, moodEvent.getAttachedImageBlurHash(), moodEvent.getAttachedImage(), target, placeholderRes);
+    }
+
+    /**
+     * Shows the profile picture of a participant, fetching it from the images collection when it is
+     * not cached. Its thumbnail is shown in the meantime. Must be called on the main thread.
+     *
+     * @param participant    the participant, may be null
+     * @param target         the image view to show the image in
+     * @param placeholderRes the drawable to show when there is no thumbnail, or 0 for none
+     */
+    public void loadProfilePicture(@Nullable Participant participant, @NonNull ImageView target, @DrawableRes int placeholderRes) {
+        if (participant == null) {
+            load(null, target, placeholderRes);
+            return;
+        }
+        loadStored(participant.getProfilePictureHash(), participant.getProfilePictureThumbnail(), null, participant.getProfilePicture(), target, placeholderRes);
+    }
+
+    private void loadStored(@Nullable String hash, @Nullable String thumbnail, @Nullable String blurHash, @Nullable String inline,
+                            @NonNull ImageView target, @DrawableRes int placeholderRes) {
+        // Documents that were not migrated yet still carry the image inline
+        if (hash == null || (inline != null && !inline.isEmpty())) {
+            load(inline, target, placeholderRes);
+            return;
+        }
+        int width = targetSize(target.getWidth(), target.getLayoutParams() != null ? target.getLayoutParams().width : 0);
+        int height = targetSize(target.getHeight(), target.getLayoutParams() != null ? target.getLayoutParams().height : 0);
+        // The hash of a stored image is the hash of its content, so it shares keys with load()
+        String key = hash + "@" + width + "x" + height;
+
+        Request pending = requests.get(target);
+        if (pending != null && pending.key.equals(key)) {
+            return;
+        }
+        cancel(target);
+
+        Bitmap cached = cache.getFromMemory(key);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+        Bitmap preview = thumbnail != null ? getThumbnail(hash, thumbnail)
+                : blurHash != null ? getBlurHashPreview(blurHash) : null;
+        if (preview != null) {
+            target.setImageBitmap(preview);
+        } else {
+            showPlaceholder(target, placeholderRes);
+        }
+
+        Request request = new Request(key);
+        requests.put(target, request);
+        request.future = decodeExecutor.submit(() -> {
+            Bitmap bitmap = cache.get(key);
+            mainHandler.post(() -> {
+                if (requests.get(target) != request) {
+                    return;
+                }
+                if (bitmap != null) {
+                    requests.remove(target);
+                    target.setImageBitmap(bitmap);
+                    return;
+                }
+                getImageRepository().fetchImage(hash, bytes -> {
+                    if (requests.get(target) != request) {
+                        return;
+                    }
+                    request.future = decodeExecutor.submit(() -> {
+                        Bitmap decoded = ImageHandler.bytesToBitmap(bytes, width, height);
+                        if (decoded != null) {
+                            cache.put(key, decoded);
+                        }
+                        mainHandler.post(() -> {
+                            if (requests.get(target) == request) {
+                                requests.remove(target);
+                                if (decoded != null) {
+                                    target.setImageBitmap(decoded);
+                                }
+                            }
+                        });
+                    });
+                }, e -> {
+                    if (requests.get(target) == request) {
+                        requests.remove(target);
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Returns the decoded thumbnail of a stored image. Thumbnails are tiny, so they are decoded on
+     * the calling thread and only kept in memory.
+     */
+    @Nullable
+    private Bitmap getThumbnail(@NonNull String hash, @NonNull String thumbnail) {
+        String key = "t:" + hash;
+        Bitmap bitmap = cache.getFromMemory(key);
+        if (bitmap == null) {
+            bitmap = ImageHandler.base64ToBitmap(thumbnail, ImageHandler.THUMBNAIL_SIZE, ImageHandler.THUMBNAIL_SIZE);
+            if (bitmap != null) {
+                cache.putInMemory(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the decoded BlurHash of a stored image, decoded on the calling thread as it is tiny
+     */
+    @Nullable
+    private Bitmap getBlurHashPreview(@NonNull String blurHash) {
+        String key = "b:" + blurHash;
+        Bitmap bitmap = cache.getFromMemory(key);
+        if (bitmap == null) {
+            bitmap = ImageHandler.blurHashToBitmap(blurHash);
+            if (bitmap != null) {
+                cache.putInMemory(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    private ImageRepository getImageRepository() {
+        if (imageRepository == null) {
+            imageRepository = new ImageRepository();
+        }
+        return imageRepository;
+    }
+
+    /**
+     * Cancels the request in flight for an image view, for example when its row is recycled. Must be
+     * called on the main thread.
+     *
+     * @param target the image view
+     */
+    public void cancel(@NonNull ImageView target) {
+        Request request = requests.remove(target);
+        if (request != null && request.future != null) {
+            request.future.cancel(true);
+        }
+    }
+
+    /**
+     * Returns the decoded bitmap of a base64 image, from the cache if it was decoded before. This
+     * decodes on the calling thread, so prefer {@link #load} on the main thread.
+     *
+     * @param base64 the base64 encoded image, may be null
+     * @return the bitmap, or null if there is no image or it cannot be decoded
+     */
+    @Nullable
+    public Bitmap getBitmap(@Nullable String base64) {
+        if (base64 == null || base64.isEmpty()) {
+            return null;
+        }
+        String key = cache.keyFor(base64) + "@" + DECODE_SIZE + "x" + DECODE_SIZE;
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = ImageHandler.base64ToBitmap(base64, DECODE_SIZE, DECODE_SIZE);
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the size to decode at for one side of an image view, rounded up to a power of two so
+     * that views of similar sizes share cache entries
+     *
+     * @param measured   the measured size of the view, or 0 if it was not laid out yet
+     * @param layoutSize the size from the layout params, negative for match_parent or wrap_content
+     */
+    private static int targetSize(int measured, int layoutSize) {
+        int size = measured > 0 ? measured : layoutSize > 0 ? layoutSize : DECODE_SIZE;
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static void showPlaceholder(ImageView target, @DrawableRes int placeholderRes) {
+        if (placeholderRes != 0) {
+            target.setImageResource(placeholderRes);
+        } else {
+            target.setImageDrawable(null);
+        }
+    }
+}
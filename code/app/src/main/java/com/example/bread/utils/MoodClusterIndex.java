@@ -0,0 +1,331 @@
+package com.example.bread.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.bread.model.MoodEvent;
+import com.firebase.geofire.GeoFireUtils;
+import com.firebase.geofire.GeoLocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory spatial index of located mood events for clustering map markers. Events are stored in
+ * a trie keyed by their geohash, where every node keeps the number of events below it per
+ * {@link MoodEvent.EmotionalState} and the sum of their coordinates. The clusters at a zoom level are
+ * the nodes at the matching geohash depth, so a viewport query only visits the cells it overlaps and
+ * adding or removing an event only updates the nodes on its path.
+ *
+ * <p>
+ * The index is not thread safe; {@link MoodClusterer} owns one on a background thread.
+ * </p>
+ */
+public class MoodClusterIndex {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    public static final int MAX_PRECISION = 10;
+
+    /**
+     * A cluster of mood events in a single geohash cell
+     */
+    public static class Cluster {
+        private final String geohash;
+        private final int count;
+        private final int[] stateCounts;
+        private final double latitude;
+        private final double longitude;
+        @Nullable
+        private final MoodEvent event;
+
+        Cluster(String geohash, int count, int[] stateCounts, double latitude, double longitude, @Nullable MoodEvent event) {
+            this.geohash = geohash;
+            this.count = count;
+            this.stateCounts = stateCounts;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.event = event;
+        }
+
+        /**
+         * Returns the geohash of the cell of this cluster
+         *
+         * @return the geohash of the cell
+         */
+        public String getGeohash() {
+            return geohash;
+        }
+
+        /**
+         * Returns the number of mood events in this cluster
+         *
+         * @return the number of mood events
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the number of mood events in this cluster with the given emotional state
+         *
+         * @param state the emotional state
+         * @return the number of mood events with that state
+         */
+        public int getCount(@NonNull MoodEvent.EmotionalState state) {
+            return stateCounts[state.ordinal()];
+        }
+
+        /**
+         * Returns the emotional state shared by most mood events of this cluster
+         *
+         * @return the most common emotional state
+         */
+        public MoodEvent.EmotionalState getDominantState() {
+            MoodEvent.EmotionalState[] states = MoodEvent.EmotionalState.values();
+            int best = 0;
+            for (int i = 1; i < states.length; i++) {
+                if (stateCounts[i] > stateCounts[best]) {
+                    best = i;
+                }
+            }
+            return states[best];
+        }
+
+        /**
+         * Returns the latitude of the centroid of this cluster
+         *
+         * @return the latitude of the centroid
+         */
+        public double getLatitude() {
+            return latitude;
+        }
+
+        /**
+         * Returns the longitude of the centroid of this cluster
+         *
+         * @return the longitude of the centroid
+         */
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /**
+         * Returns the mood event of this cluster if it holds a single one
+         *
+         * @return the single mood event, or null if the cluster holds several
+         */
+        @Nullable
+        public MoodEvent getEvent() {
+            return event;
+        }
+    }
+
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        final int[] stateCounts = new int[MoodEvent.EmotionalState.values().length];
+        // Only set on leaves, keyed by event id
+        Map<String, MoodEvent> events;
+        int count;
+        double latitudeSum;
+        double longitudeSum;
+    }
+
+    private static class Entry {
+        final String geohash;
+        final MoodEvent event;
+        final double latitude;
+        final double longitude;
+
+        Entry(String geohash, MoodEvent event, double latitude, double longitude) {
+            this.geohash = geohash;
+            this.event = event;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private final Node root = new Node();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Returns the geohash precision whose cells are about a marker wide at the given map zoom level
+     *
+     * @param zoom the zoom level of the map, where the world is 256 * 2^zoom pixels wide
+     * @return the geohash precision to cluster at
+     */
+    public static int precisionForZoom(float zoom) {
+        // A cell of precision p is 360 / 2^ceil(5p / 2) degrees wide, about 64 to 128 px for ceil(5p / 2) = zoom + 2
+        int lonBits = (int) Math.floor(zoom) + 2;
+        for (int precision = 1; precision < MAX_PRECISION; precision++) {
+            if ((5 * precision + 1) / 2 >= lonBits) {
+                return precision;
+            }
+        }
+        return MAX_PRECISION;
+    }
+
+    /**
+     * Returns the number of mood events in the index
+     *
+     * @return the number of mood events
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Adds a mood event to the index, replacing the previous copy with the same id. Mood events
+     * without a location are ignored.
+     *
+     * @param event the mood event to add
+     * @return true if the mood event was added
+     */
+    public boolean add(@NonNull MoodEvent event) {
+        Map<String, Object> geoInfo = event.getGeoInfo();
+        if (event.getId() == null || geoInfo == null
+                || !(geoInfo.get("latitude") instanceof Number) || !(geoInfo.get("longitude") instanceof Number)) {
+            return false;
+        }
+        remove(event.getId());
+        double latitude = ((Number) geoInfo.get("latitude")).doubleValue();
+        double longitude = ((Number) geoInfo.get("longitude")).doubleValue();
+        String geohash = GeoFireUtils.getGeoHashForLocation(new GeoLocation(latitude, longitude), MAX_PRECISION);
+        Entry entry = new Entry(geohash, event, latitude, longitude);
+        entries.put(event.getId(), entry);
+
+        int state = event.getEmotionalState() != null ? event.getEmotionalState().ordinal() : -1;
+        Node node = root;
+        apply(node, entry, state, 1);
+        for (int i = 0; i < geohash.length(); i++) {
+            node = node.children.computeIfAbsent(geohash.charAt(i), c -> new Node());
+            apply(node, entry, state, 1);
+        }
+        if (node.events == null) {
+            node.events = new HashMap<>();
+        }
+        node.events.put(event.getId(), event);
+        return true;
+    }
+
+    /**
+     * Removes the mood event with the given id from the index
+     *
+     * @param eventId the id of the mood event to remove
+     * @return true if the mood event was in the index
+     */
+    public boolean remove(@NonNull String eventId) {
+        Entry entry = entries.remove(eventId);
+        if (entry == null) {
+            return false;
+        }
+        int state = entry.event.getEmotionalState() != null ? entry.event.getEmotionalState().ordinal() : -1;
+        Node node = root;
+        apply(node, entry, state, -1);
+        for (int i = 0; i < entry.geohash.length(); i++) {
+            Node child = node.children.get(entry.geohash.charAt(i));
+            apply(child, entry, state, -1);
+            if (child.count == 0) {
+                // Nothing is left below this cell
+                node.children.remove(entry.geohash.charAt(i));
+                return true;
+            }
+            node = child;
+        }
+        node.events.remove(eventId);
+        return true;
+    }
+
+    /**
+     * Removes all mood events from the index
+     */
+    public void clear() {
+        entries.clear();
+        root.children.clear();
+        root.count = 0;
+        root.latitudeSum = 0;
+        root.longitudeSum = 0;
+        Arrays.fill(root.stateCounts, 0);
+    }
+
+    /**
+     * Returns the clusters of the mood events inside a viewport at the given precision. Viewports
+     * crossing the antimeridian have a west edge greater than their east edge.
+     *
+     * @param south     the southern latitude of the viewport
+     * @param west      the western longitude of the viewport
+     * @param north     the northern latitude of the viewport
+     * @param east      the eastern longitude of the viewport
+     * @param precision the geohash precision of the cluster cells, see {@link #precisionForZoom}
+     * @return the clusters whose cells overlap the viewport
+     */
+    public List<Cluster> clusters(double south, double west, double north, double east, int precision) {
+        int depth = Math.max(1, Math.min(precision, MAX_PRECISION));
+        List<Cluster> clusters = new ArrayList<>();
+        if (west <= east) {
+            collect(root, "", -90, 90, -180, 180, south, west, north, east, depth, clusters);
+        } else {
+            collect(root, "", -90, 90, -180, 180, south, west, north, 180, depth, clusters);
+            collect(root, "", -90, 90, -180, 180, south, -180, north, east, depth, clusters);
+        }
+        return clusters;
+    }
+
+    private void collect(Node node, String geohash, double minLat, double maxLat, double minLng, double maxLng,
+                         double south, double west, double north, double east, int depth, List<Cluster> out) {
+        if (minLat > north || maxLat < south || minLng > east || maxLng < west) {
+            return;
+        }
+        if (geohash.length() == depth) {
+            MoodEvent single = node.count == 1 ? singleEvent(node) : null;
+            out.add(new Cluster(geohash, node.count, node.stateCounts.clone(),
+                    node.latitudeSum / node.count, node.longitudeSum / node.count, single));
+            return;
+        }
+        for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+            // Each character refines the cell by 5 bits, alternating longitude and latitude
+            int bits = BASE32.indexOf(child.getKey());
+            double cMinLat = minLat;
+            double cMaxLat = maxLat;
+            double cMinLng = minLng;
+            double cMaxLng = maxLng;
+            for (int i = 0; i < 5; i++) {
+                boolean high = ((bits >> (4 - i)) & 1) == 1;
+                if ((geohash.length() * 5 + i) % 2 == 0) {
+                    double mid = (cMinLng + cMaxLng) / 2;
+                    if (high) {
+                        cMinLng = mid;
+                    } else {
+                        cMaxLng = mid;
+                    }
+                } else {
+                    double mid = (cMinLat + cMaxLat) / 2;
+                    if (high) {
+                        cMinLat = mid;
+                    } else {
+                        cMaxLat = mid;
+                    }
+                }
+            }
+            collect(child.getValue(), geohash + child.getKey(), cMinLat, cMaxLat, cMinLng, cMaxLng,
+                    south, west, north, east, depth, out);
+        }
+    }
+
+    private static MoodEvent singleEvent(Node node) {
+        while (node.events == null) {
+            node = node.children.values().iterator().next();
+        }
+        return node.events.values().iterator().next();
+    }
+
+    private static void apply(Node node, Entry entry, int state, int delta) {
+        node.count += delta;
+        node.latitudeSum += delta * entry.latitude;
+        node.longitudeSum += delta * entry.longitude;
+        if (state >= 0) {
+            node.stateCounts[state] += delta;
+        }
+    }
+}
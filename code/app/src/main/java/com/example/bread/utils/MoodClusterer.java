@@ -0,0 +1,108 @@
+package com.example.bread.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.example.bread.model.MoodEvent;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clusters the mood events shown on the map off the main thread. Changes to the set of mood events
+ * and cluster requests run in order on a single background thread that owns a {@link MoodClusterIndex},
+ * and results are delivered on the main thread. Only the result of the latest request is delivered,
+ * so a burst of camera moves does not pile up stale clusterings. Calls made after {@link #shutdown()},
+ * such as from a query that completes after the map was left, are ignored.
+ */
+public class MoodClusterer {
+    private final MoodClusterIndex index = new MoodClusterIndex();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Adds mood events to the clusters, replacing previous copies with the same ids
+     *
+     * @param events the mood events to add
+     */
+    public void addEvents(@NonNull Collection<MoodEvent> events) {
+        List<MoodEvent> copy = new ArrayList<>(events);
+        execute(() -> {
+            for (MoodEvent event : copy) {
+                index.add(event);
+            }
+        });
+    }
+
+    /**
+     * Removes a mood event from the clusters
+     *
+     * @param eventId the id of the mood event to remove
+     */
+    public void removeEvent(@NonNull String eventId) {
+        execute(() -> index.remove(eventId));
+    }
+
+    /**
+     * Replaces all the mood events of the clusters
+     *
+     * @param events the mood events to cluster
+     */
+    public void setEvents(@NonNull Collection<MoodEvent> events) {
+        execute(index::clear);
+        addEvents(events);
+    }
+
+    /**
+     * Computes the clusters inside a viewport at the given zoom level. The listener is called on the
+     * main thread, unless a newer request was made in the meantime.
+     *
+     * @param south             the southern latitude of the viewport
+     * @param west              the western longitude of the viewport
+     * @param north             the northern latitude of the viewport
+     * @param east              the eastern longitude of the viewport
+     * @param zoom              the zoom level of the map
+     * @param onSuccessListener the listener to be called with the clusters
+     */
+    public void requestClusters(double south, double west, double north, double east, float zoom,
+                                @NonNull OnSuccessListener<List<MoodClusterIndex.Cluster>> onSuccessListener) {
+        int requestGeneration = generation.incrementAndGet();
+        execute(() -> {
+            if (requestGeneration != generation.get()) {
+                return;
+            }
+            List<MoodClusterIndex.Cluster> clusters = index.clusters(south, west, north, east, MoodClusterIndex.precisionForZoom(zoom));
+            mainHandler.post(() -> {
+                if (requestGeneration == generation.get()) {
+                    onSuccessListener.onSuccess(clusters);
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs a task on the background thread, unless the clusterer was shut down
+     */
+    private void execute(@NonNull Runnable task) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Stops the background thread. Later calls are ignored.
+     */
+    public void shutdown() {
+        generation.incrementAndGet();
+        executor.shutdownNow();
+    }
+}
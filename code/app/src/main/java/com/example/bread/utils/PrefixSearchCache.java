@@ -0,0 +1,116 @@
+package com.example.bread.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A cache of prefix search results, keyed by the prefix searched. A query is answered from the results
+ * of the query itself or, when a shorter prefix returned fewer results than the search limit and so
+ * holds every match, by filtering the results of that shorter prefix locally. At most
+ * {@code maxPrefixes} prefixes are kept, evicting the least recently used, and results expire after
+ * {@code ttlMs}.
+ *
+ * <p>
+ * The cache is not thread safe; {@link com.example.bread.repository.UserSearch} uses it on the main
+ * thread.
+ * </p>
+ *
+ * @param <T> the type of the results
+ */
+public class PrefixSearchCache<T> {
+
+    private static class Entry<T> {
+        final List<T> results;
+        final long fetchedAt;
+
+        Entry(List<T> results, long fetchedAt) {
+            this.results = results;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private final int limit;
+    private final long ttlMs;
+    private final Function<T, String> keyOf;
+    private final Map<String, Entry<T>> entries;
+
+    /**
+     * @param limit       the maximum number of results a search returns
+     * @param maxPrefixes the maximum number of prefixes to keep
+     * @param ttlMs       how long results are kept, in milliseconds
+     * @param keyOf       the searched key of a result
+     */
+    public PrefixSearchCache(int limit, int maxPrefixes, long ttlMs, @NonNull Function<T, String> keyOf) {
+        this.limit = limit;
+        this.ttlMs = ttlMs;
+        this.keyOf = keyOf;
+        this.entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxPrefixes;
+            }
+        };
+    }
+
+    /**
+     * Stores the results of a search
+     *
+     * @param prefix    the prefix searched
+     * @param results   the results, at most the search limit
+     * @param fetchedAt when the results were fetched, in milliseconds
+     */
+    public void put(@NonNull String prefix, @NonNull List<T> results, long fetchedAt) {
+        entries.put(prefix, new Entry<>(new ArrayList<>(results), fetchedAt));
+    }
+
+    /**
+     * Returns the results of a query if they can be answered without searching
+     *
+     * @param query the prefix to search
+     * @param now   the current time, in milliseconds
+     * @return the results in the order they were fetched, or null if the query must be searched
+     */
+    @Nullable
+    public List<T> get(@NonNull String query, long now) {
+        for (int length = query.length(); length > 0; length--) {
+            String prefix = query.substring(0, length);
+            Entry<T> entry = entries.get(prefix);
+            if (entry == null) {
+                continue;
+            }
+            if (now - entry.fetchedAt > ttlMs) {
+                entries.remove(prefix);
+                continue;
+            }
+            if (length == query.length()) {
+                return new ArrayList<>(entry.results);
+            }
+            // Results cut off by the limit may be missing matches of the longer query
+            if (entry.results.size() >= limit) {
+                return null;
+            }
+            List<T> filtered = new ArrayList<>();
+            for (T result : entry.results) {
+                String key = keyOf.apply(result);
+                if (key != null && key.startsWith(query)) {
+                    filtered.add(result);
+                }
+            }
+            return filtered;
+        }
+        return null;
+    }
+
+    /**
+     * Removes every cached result
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.bread.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes an image at the highest quality that fits in a byte budget. Instead of stepping the
+ * quality down one encode at a time, the quality is binary searched over {@link #MIN_QUALITY} to
+ * {@link #MAX_QUALITY} in steps of {@link #QUALITY_STEP}, so an image takes at most four encodes to
+ * fit. The search only depends on a {@link Codec}, so it can run on any image type.
+ */
+public final class TargetSizeEncoder {
+    public static final int MAX_QUALITY = 95;
+    public static final int MIN_QUALITY = 40;
+    public static final int QUALITY_STEP = 5;
+
+    /**
+     * Encodes an image at a given quality
+     */
+    public interface Codec {
+        /**
+         * Encodes the image into a stream
+         *
+         * @param quality the quality to encode at, from 0 to 100
+         * @param out     the stream to write the encoded image to
+         * @throws IOException if the image cannot be written
+         */
+        void encode(int quality, OutputStream out) throws IOException;
+    }
+
+    /**
+     * The outcome of an encode, with the number of encode passes it took
+     */
+    public static final class Result {
+        private final byte[] bytes;
+        private final int quality;
+        private final int passes;
+
+        Result(byte[] bytes, int quality, int passes) {
+            this.bytes = bytes;
+            this.quality = quality;
+            this.passes = passes;
+        }
+
+        /**
+         * Returns the encoded image
+         *
+         * @return the encoded image, or null if it did not fit even at {@link #MIN_QUALITY}
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the quality the image was encoded at, or 0 if it did not fit
+         */
+        public int getQuality() {
+            return quality;
+        }
+
+        /**
+         * Returns the number of times the image was encoded
+         */
+        public int getPasses() {
+            return passes;
+        }
+    }
+
+    // Private constructor to prevent instantiation.
+    private TargetSizeEncoder() {
+    }
+
+    /**
+     * Encodes an image at the highest quality step whose output fits in the byte budget
+     *
+     * @param codec    the codec of the image
+     * @param maxBytes the byte budget
+     * @return the result, whose bytes are null if the image does not fit at {@link #MIN_QUALITY}
+     * @throws IOException if the codec fails
+     */
+    public static Result encode(Codec codec, int maxBytes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(maxBytes + 1);
+        byte[] best = null;
+        int bestQuality = 0;
+        int passes = 0;
+        int low = 0;
+        int high = (MAX_QUALITY - MIN_QUALITY) / QUALITY_STEP;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int quality = MIN_QUALITY + mid * QUALITY_STEP;
+            outputStream.reset();
+            codec.encode(quality, outputStream);
+            passes++;
+            if (outputStream.size() <= maxBytes) {
+                // Only copy the output out of the stream when it is a candidate
+                best = outputStream.toByteArray();
+                bestQuality = quality;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return new Result(best, bestQuality, passes);
+    }
+
+    /**
+     * Returns the factor to scale an image by so that it has at most a given number of pixels
+     *
+     * @param width     the width of the image
+     * @param height    the height of the image
+     * @param maxPixels the pixel budget
+     * @return the scale factor, at most 1
+     */
+    public static double scaleForPixelBudget(int width, int height, long maxPixels) {
+        long pixels = (long) width * height;
+        if (pixels <= maxPixels || pixels == 0) {
+            return 1;
+        }
+        return Math.sqrt((double) maxPixels / pixels);
+    }
+}
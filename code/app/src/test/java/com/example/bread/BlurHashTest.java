@@ -0,0 +1,60 @@
+package com.example.bread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bread.utils.BlurHash;
+
+import org.junit.Test;
+
+public class BlurHashTest {
+
+    private int[] solid(int color, int width, int height) {
+        int[] pixels = new int[width * height];
+        java.util.Arrays.fill(pixels, color);
+        return pixels;
+    }
+
+    private int channel(int pixel, int shift) {
+        return (pixel >> shift) & 0xff;
+    }
+
+    @Test
+    public void testHashLengthMatchesComponents() {
+        assertEquals(6, BlurHash.encode(solid(0xff336699, 8, 8), 8, 8, 1, 1).length());
+        assertEquals(28, BlurHash.encode(solid(0xff336699, 8, 8), 8, 8, 4, 3).length());
+    }
+
+    @Test
+    public void testSolidColorRoundTrips() {
+        String hash = BlurHash.encode(solid(0xff336699, 16, 16), 16, 16, 1, 1);
+        int[] pixels = BlurHash.decode(hash, 4, 4);
+        for (int pixel : pixels) {
+            assertEquals(0x33, channel(pixel, 16), 1);
+            assertEquals(0x66, channel(pixel, 8), 1);
+            assertEquals(0x99, channel(pixel, 0), 1);
+            assertEquals(0xff, channel(pixel, 24));
+        }
+    }
+
+    @Test
+    public void testGradientKeepsItsDirection() {
+        int width = 32;
+        int height = 8;
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int v = x * 255 / (width - 1);
+                pixels[y * width + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        int[] decoded = BlurHash.decode(BlurHash.encode(pixels, width, height, 4, 3), 8, 1);
+        assertTrue(channel(decoded[0], 16) < 80);
+        assertTrue(channel(decoded[7], 16) > 175);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHashIsRejected() {
+        BlurHash.decode("LEHV6nWB2yk8", 4, 4);
+    }
+}
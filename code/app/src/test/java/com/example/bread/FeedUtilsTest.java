@@ -0,0 +1,70 @@
+package com.example.bread;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.bread.model.MoodEvent;
+import com.example.bread.utils.FeedUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class FeedUtilsTest {
+
+    private MoodEvent eventAt(String id, long time) {
+        MoodEvent event = new MoodEvent("title " + id, "reason", MoodEvent.EmotionalState.HAPPY, null);
+        event.setId(id);
+        event.setTimestamp(new Date(time));
+        return event;
+    }
+
+    private List<String> ids(List<MoodEvent> events) {
+        List<String> ids = new ArrayList<>();
+        for (MoodEvent event : events) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testMergeNewestFirst_InterleavesBatch() {
+        List<MoodEvent> feed = Arrays.asList(eventAt("a", 50), eventAt("c", 30), eventAt("e", 10));
+        List<MoodEvent> batch = Arrays.asList(eventAt("b", 40), eventAt("d", 20));
+
+        List<MoodEvent> merged = FeedUtils.mergeNewestFirst(feed, batch);
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), ids(merged));
+    }
+
+    @Test
+    public void testMergeNewestFirst_SkipsDuplicates() {
+        List<MoodEvent> feed = Arrays.asList(eventAt("a", 50), eventAt("b", 40));
+        List<MoodEvent> batch = Arrays.asList(eventAt("b", 40), eventAt("c", 30));
+
+        List<MoodEvent> merged = FeedUtils.mergeNewestFirst(feed, batch);
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(merged));
+    }
+
+    @Test
+    public void testMergeNewestFirst_EmptyFeed() {
+        List<MoodEvent> batch = Arrays.asList(eventAt("a", 50), eventAt("b", 40));
+
+        List<MoodEvent> merged = FeedUtils.mergeNewestFirst(new ArrayList<>(), batch);
+
+        assertEquals(Arrays.asList("a", "b"), ids(merged));
+    }
+
+    @Test
+    public void testInsertionIndex_KeepsNewestFirstOrder() {
+        List<MoodEvent> feed = Arrays.asList(eventAt("a", 50), eventAt("b", 40), eventAt("c", 30));
+
+        assertEquals(0, FeedUtils.insertionIndex(feed, eventAt("x", 60)));
+        assertEquals(2, FeedUtils.insertionIndex(feed, eventAt("x", 40)));
+        assertEquals(2, FeedUtils.insertionIndex(feed, eventAt("x", 35)));
+        assertEquals(3, FeedUtils.insertionIndex(feed, eventAt("x", 10)));
+    }
+}
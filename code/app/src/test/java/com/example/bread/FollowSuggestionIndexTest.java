@@ -0,0 +1,113 @@
+package com.example.bread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bread.utils.FollowSuggestionIndex;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class FollowSuggestionIndexTest {
+
+    private FollowSuggestionIndex index;
+
+    @Before
+    public void setUp() {
+        index = new FollowSuggestionIndex("me");
+        // alice and bob both follow carol; bob also follows dave, me and alice
+        index.addFollowed("alice", Arrays.asList("carol", "erin"));
+        index.addFollowed("bob", Arrays.asList("carol", "dave", "me", "alice"));
+    }
+
+    @Test
+    public void testRanksByMutualCount() {
+        List<FollowSuggestionIndex.Suggestion> suggestions = index.top(10, Collections.emptySet());
+        assertEquals(3, suggestions.size());
+        assertEquals("carol", suggestions.get(0).getUsername());
+        assertEquals(2, suggestions.get(0).getMutualCount());
+        // Ties are broken by username
+        assertEquals("dave", suggestions.get(1).getUsername());
+        assertEquals("erin", suggestions.get(2).getUsername());
+    }
+
+    @Test
+    public void testNeverSuggestsSelfOrFollowed() {
+        for (FollowSuggestionIndex.Suggestion suggestion : index.top(10, Collections.emptySet())) {
+            assertTrue(!suggestion.getUsername().equals("me") && !suggestion.getUsername().equals("alice"));
+        }
+    }
+
+    @Test
+    public void testUnfollowUpdatesIncrementally() {
+        index.removeFollowed("bob");
+        List<FollowSuggestionIndex.Suggestion> suggestions = index.top(10, Collections.emptySet());
+        assertEquals(2, suggestions.size());
+        assertEquals(1, index.getMutualCount("carol"));
+        assertEquals(0, index.getMutualCount("dave"));
+    }
+
+    @Test
+    public void testExcludesGivenUsernames() {
+        List<FollowSuggestionIndex.Suggestion> suggestions = index.top(1, new HashSet<>(Collections.singletonList("carol")));
+        assertEquals(1, suggestions.size());
+        assertEquals("dave", suggestions.get(0).getUsername());
+    }
+
+    @Test
+    public void testLargeIndexRanksInOrder() {
+        FollowSuggestionIndex large = randomIndex(100, 100, 2000);
+        List<FollowSuggestionIndex.Suggestion> suggestions = large.top(20, Collections.emptySet());
+        assertEquals(20, suggestions.size());
+        for (int i = 1; i < suggestions.size(); i++) {
+            assertTrue(suggestions.get(i - 1).getMutualCount() >= suggestions.get(i).getMutualCount());
+        }
+        // Nothing ranked below the cut has more mutual connections than the last suggestion
+        for (int i = 0; i < 2000; i++) {
+            String username = "user" + i;
+            boolean suggested = false;
+            for (FollowSuggestionIndex.Suggestion suggestion : suggestions) {
+                suggested |= suggestion.getUsername().equals(username);
+            }
+            if (!suggested) {
+                assertTrue(large.getMutualCount(username) <= suggestions.get(19).getMutualCount());
+            }
+        }
+    }
+
+    // Times an index with thousands of second-degree connections, so it is run by hand rather than with every test run
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmarkThousandsOfSecondDegreeConnections() {
+        FollowSuggestionIndex large = randomIndex(500, 200, 20000);
+
+        long start = System.nanoTime();
+        List<FollowSuggestionIndex.Suggestion> suggestions = large.top(20, Collections.emptySet());
+        long topMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(20, suggestions.size());
+        assertTrue(topMs < 100);
+    }
+
+    // An index of participants who each follow random participants out of the given number
+    private static FollowSuggestionIndex randomIndex(int followedCount, int followingEach, int participantCount) {
+        Random random = new Random(42);
+        FollowSuggestionIndex index = new FollowSuggestionIndex("me");
+        for (int i = 0; i < followedCount; i++) {
+            List<String> following = new ArrayList<>();
+            for (int j = 0; j < followingEach; j++) {
+                following.add("user" + random.nextInt(participantCount));
+            }
+            index.addFollowed("followed" + i, following);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.bread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bread.model.MoodEvent;
+import com.example.bread.utils.MoodClusterIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MoodClusterIndexTest {
+
+    private MoodClusterIndex index;
+
+    private MoodEvent eventAt(String id, MoodEvent.EmotionalState state, double latitude, double longitude) {
+        MoodEvent event = new MoodEvent("title " + id, "reason", state, null);
+        event.setId(id);
+        Map<String, Object> geoInfo = new HashMap<>();
+        geoInfo.put("latitude", latitude);
+        geoInfo.put("longitude", longitude);
+        event.setGeoInfo(geoInfo);
+        return event;
+    }
+
+    private int total(List<MoodClusterIndex.Cluster> clusters) {
+        int total = 0;
+        for (MoodClusterIndex.Cluster cluster : clusters) {
+            total += cluster.getCount();
+        }
+        return total;
+    }
+
+    @Before
+    public void setUp() {
+        index = new MoodClusterIndex();
+        // Two events close together in Edmonton and one in Calgary
+        index.add(eventAt("a", MoodEvent.EmotionalState.HAPPY, 53.5461, -113.4938));
+        index.add(eventAt("b", MoodEvent.EmotionalState.SAD, 53.5462, -113.4939));
+        index.add(eventAt("c", MoodEvent.EmotionalState.HAPPY, 51.0447, -114.0719));
+    }
+
+    @Test
+    public void testClustersGroupNearbyEventsAtLowZoom() {
+        List<MoodClusterIndex.Cluster> clusters = index.clusters(-90, -180, 90, 180, MoodClusterIndex.precisionForZoom(3));
+        assertEquals(1, clusters.size());
+        assertEquals(3, clusters.get(0).getCount());
+        assertEquals(2, clusters.get(0).getCount(MoodEvent.EmotionalState.HAPPY));
+        assertEquals(1, clusters.get(0).getCount(MoodEvent.EmotionalState.SAD));
+        assertEquals(MoodEvent.EmotionalState.HAPPY, clusters.get(0).getDominantState());
+        assertNull(clusters.get(0).getEvent());
+    }
+
+    @Test
+    public void testClustersSplitAtHighZoom() {
+        List<MoodClusterIndex.Cluster> clusters = index.clusters(-90, -180, 90, 180, MoodClusterIndex.precisionForZoom(8));
+        assertEquals(2, clusters.size());
+        assertEquals(3, total(clusters));
+    }
+
+    @Test
+    public void testViewportOnlyReturnsOverlappingCells() {
+        List<MoodClusterIndex.Cluster> clusters = index.clusters(50.9, -114.2, 51.2, -113.9, MoodClusterIndex.precisionForZoom(12));
+        assertEquals(1, clusters.size());
+        assertNotNull(clusters.get(0).getEvent());
+        assertEquals("c", clusters.get(0).getEvent().getId());
+    }
+
+    @Test
+    public void testRemoveAndReplaceUpdateCounts() {
+        assertTrue(index.remove("b"));
+        index.add(eventAt("a", MoodEvent.EmotionalState.ANGRY, 53.5461, -113.4938));
+        List<MoodClusterIndex.Cluster> clusters = index.clusters(-90, -180, 90, 180, 1);
+        assertEquals(2, index.size());
+        assertEquals(2, total(clusters));
+        assertEquals(1, clusters.get(0).getCount(MoodEvent.EmotionalState.ANGRY));
+        assertEquals(0, clusters.get(0).getCount(MoodEvent.EmotionalState.SAD));
+    }
+
+    @Test
+    public void testEventsWithoutLocationAreIgnored() {
+        MoodEvent event = new MoodEvent("title", "reason", MoodEvent.EmotionalState.HAPPY, null);
+        assertEquals(false, index.add(event));
+        assertEquals(3, index.size());
+    }
+}
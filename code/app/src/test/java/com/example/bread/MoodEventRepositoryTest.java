@@ -3,6 +3,7 @@ package com.example.bread;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -32,12 +33,17 @@ public class MoodEventRepositoryTest {
     private FirebaseFirestore mockFirestore;
     @Mock
     private CollectionReference mockEventColl;
+    private CollectionReference mockParticipantColl;
     private MoodEventRepository moodEventRepository;
 
     @Before
     public void setUp() {
         MockitoAnnotations.openMocks(this);
         when(mockFirestore.collection("moodEvents")).thenReturn(mockEventColl);
+        // Feed fan-out reads followers through the participants collection, which never completes here
+        mockParticipantColl = mock(CollectionReference.class, RETURNS_DEEP_STUBS);
+        when(mockFirestore.collection("participants")).thenReturn(mockParticipantColl);
+        when(mockFirestore.collection("latestLocatedEvents")).thenReturn(mock(CollectionReference.class, RETURNS_DEEP_STUBS));
         FirebaseService firebaseService = new FirebaseService(mockFirestore);
         moodEventRepository = new MoodEventRepository(firebaseService);
     }
@@ -0,0 +1,61 @@
+package com.example.bread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.example.bread.utils.PrefixSearchCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PrefixSearchCacheTest {
+
+    private static final long TTL_MS = 1000;
+
+    private PrefixSearchCache<String> cache;
+
+    @Before
+    public void setUp() {
+        cache = new PrefixSearchCache<>(3, 10, TTL_MS, username -> username);
+    }
+
+    @Test
+    public void testFiltersCompleteShorterPrefix() {
+        cache.put("al", Arrays.asList("alex", "alice"), 0);
+        assertEquals(Arrays.asList("alice"), cache.get("ali", 0));
+        assertEquals(new ArrayList<String>(), cache.get("alz", 0));
+    }
+
+    @Test
+    public void testTruncatedShorterPrefixIsSearched() {
+        cache.put("al", Arrays.asList("alex", "alice", "allan"), 0);
+        assertNull(cache.get("ali", 0));
+        // The prefix itself is still answered
+        assertEquals(3, cache.get("al", 0).size());
+    }
+
+    @Test
+    public void testUsesLongestCachedPrefix() {
+        cache.put("a", Arrays.asList("adam", "alex", "alice"), 0);
+        cache.put("al", Arrays.asList("alex", "alice"), 0);
+        List<String> results = cache.get("alice", 0);
+        assertEquals(Arrays.asList("alice"), results);
+    }
+
+    @Test
+    public void testExpiredResultsAreSearched() {
+        cache.put("al", Arrays.asList("alex"), 0);
+        assertNull(cache.get("al", TTL_MS + 1));
+        assertNull(cache.get("ale", 0));
+    }
+
+    @Test
+    public void testUnknownPrefixIsSearched() {
+        cache.put("bo", Arrays.asList("bob"), 0);
+        assertNull(cache.get("al", 0));
+    }
+}
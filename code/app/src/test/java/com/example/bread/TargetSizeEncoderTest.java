@@ -0,0 +1,153 @@
+package com.example.bread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bread.utils.TargetSizeEncoder;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Tests {@link TargetSizeEncoder}, and compares it with the quality-step loop it replaced using the
+ * JPEG encoder of the JVM in place of Bitmap.compress.
+ */
+public class TargetSizeEncoderTest {
+
+    private static final int MAX_BYTES = 64 * 1024;
+    private static final int MAX_PIXELS = 1024 * 768;
+
+    private static class Passes {
+        int count;
+    }
+
+    // An image with gradients and noise, which compresses about as badly as a photo
+    private static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(32)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(32)) & 0xff;
+                int b = ((x + y) * 255 / (width + height) + random.nextInt(32)) & 0xff;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static void writeJpeg(BufferedImage image, int quality, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality / 100f);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, double factor) {
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    // The loop ImageHandler.compressBitmapToBase64 used before TargetSizeEncoder
+    private static byte[] legacyEncode(BufferedImage image, Passes passes) throws IOException {
+        int quality = 100;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeJpeg(image, quality, outputStream);
+        passes.count++;
+        while (outputStream.toByteArray().length > MAX_BYTES) {
+            outputStream.reset();
+            quality -= 10;
+            if (quality <= 10) {
+                quality = 70;
+                image = scale(image, 0.7);
+            }
+            writeJpeg(image, quality, outputStream);
+            passes.count++;
+        }
+        return outputStream.toByteArray();
+    }
+
+    // The path ImageHandler.encodeToTargetSize takes
+    private static TargetSizeEncoder.Result targetSizeEncode(BufferedImage image, Passes passes) throws IOException {
+        double factor = TargetSizeEncoder.scaleForPixelBudget(image.getWidth(), image.getHeight(), MAX_PIXELS);
+        BufferedImage source = factor < 1 ? scale(image, factor) : image;
+        while (true) {
+            BufferedImage current = source;
+            TargetSizeEncoder.Result result = TargetSizeEncoder.encode((quality, out) -> writeJpeg(current, quality, out), MAX_BYTES);
+            passes.count += result.getPasses();
+            if (result.getBytes() != null) {
+                return result;
+            }
+            source = scale(source, 0.7);
+        }
+    }
+
+    @Test
+    public void testEncodeFindsHighestFittingQuality() throws IOException {
+        // A fake codec whose output grows by 1000 bytes per quality point
+        TargetSizeEncoder.Result result = TargetSizeEncoder.encode((quality, out) -> out.write(new byte[quality * 1000]), 72_000);
+        assertEquals(70, result.getQuality());
+        assertEquals(70_000, result.getBytes().length);
+        assertTrue(result.getPasses() <= 4);
+    }
+
+    @Test
+    public void testEncodeReportsWhenNothingFits() throws IOException {
+        TargetSizeEncoder.Result result = TargetSizeEncoder.encode((quality, out) -> out.write(new byte[quality * 1000]), 1000);
+        assertNull(result.getBytes());
+        assertEquals(0, result.getQuality());
+    }
+
+    @Test
+    public void testScaleForPixelBudget() {
+        assertEquals(1.0, TargetSizeEncoder.scaleForPixelBudget(800, 600, MAX_PIXELS), 0);
+        double factor = TargetSizeEncoder.scaleForPixelBudget(4000, 3000, MAX_PIXELS);
+        assertTrue(4000 * factor * 3000 * factor <= MAX_PIXELS + 1);
+    }
+
+    // Encodes a 6 MP image a few dozen times, so it is run by hand rather than with every test run
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmarkAgainstQualityStepLoop() throws IOException {
+        BufferedImage image = photo(3000, 2000);
+
+        Passes legacyPasses = new Passes();
+        byte[] legacy = legacyEncode(image, legacyPasses);
+
+        Passes passes = new Passes();
+        TargetSizeEncoder.Result result = targetSizeEncode(image, passes);
+
+        assertTrue(legacy.length <= MAX_BYTES);
+        assertNotNull(result.getBytes());
+        assertTrue(result.getBytes().length <= MAX_BYTES);
+        assertTrue(passes.count < legacyPasses.count);
+    }
+}